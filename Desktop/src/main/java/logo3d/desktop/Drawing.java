@@ -0,0 +1,555 @@
+package logo3d.desktop;
+
+import com.jme3.material.Material;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.util.BufferUtils;
+import logo3d.desktop.jfr.DrawBatchEvent;
+import logo3d.language.Shape;
+import logo3d.language.drawing.SegmentDeduplicator;
+import logo3d.language.drawing.SegmentStore;
+import logo3d.language.drawing.StrokeMeshBuilder;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The lines drawn by the turtle, organized as append-only layers.
+ *
+ * Segments are only ever appended to the current layer: clearing the screen drops that layer in one detach, and
+ * undo truncates it back to a previous segment count without touching the remaining meshes.
+ *
+ * The segments of a layer live off-heap in a {@link SegmentStore}: each page of the store is rendered by one
+ * line mesh whose vertex buffer is a view of the page itself, so nothing is copied on the heap. Pages changed
+ * during a frame are pushed to their mesh once, before rendering.
+ *
+ * Optionally, segments drawn again over existing ones are dropped by a {@link SegmentDeduplicator}, which saves
+ * both vertices and overdraw for patterns retracing their own lines. They still count for undo.
+ *
+ * The {@link Shape}s recorded for procedure invocations are drawn as copies of a single mesh per shape, each with
+ * its own transform: memory and mesh building follow the number of distinct shapes, not of invocations.
+ *
+ * With a {@link StrokeMeshBuilder}, pages are drawn as thick strokes instead of lines, since line width is only a
+ * hint to the GL driver. Stroke meshes are built on the fork-join pool from a snapshot of the page: the page keeps
+ * its line mesh until the stroke of its latest content is ready, at most one build per page running at a time.
+ * The last page, while it grows, is built again at most every {@link #GROWING_STROKE_INTERVAL} nanoseconds, its
+ * new segments drawn as lines over its previous stroke meanwhile. The memory of a stroke is freed as soon as it is
+ * replaced or dropped.
+ * Must only be used from the render thread.
+ */
+public class Drawing {
+
+    private static final Logger LOG = getLogger(Drawing.class);
+
+    // a single line material, hence a single pen.
+    private static final int PEN = 0;
+
+    // the stroke of a page still growing is built at most that often, in nanoseconds.
+    private static final long GROWING_STROKE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final Node node = new Node("drawing");
+    private final Material lineMaterial;
+    private final Material strokeMaterial;
+
+    private Layer layer;
+    private int epoch;
+    private boolean deduplicating;
+
+    // one mesh per shape drawn, shared by all its copies.
+    private final Map<Shape, Mesh> shapeMeshes = new WeakHashMap<>();
+
+    // lines when null.
+    private StrokeMeshBuilder stroke;
+
+    // strokes built by the fork-join pool, waiting for the render thread.
+    private final Queue<BuiltStroke> builtStrokes = new ConcurrentLinkedQueue<>();
+
+    // incremented each time a page changes, to tell whether a stroke built from it is still up to date.
+    private long pageVersion;
+
+    public Drawing(Material lineMaterial, Material strokeMaterial) {
+        this.lineMaterial = lineMaterial;
+        this.strokeMaterial = strokeMaterial;
+        node.addControl(new AbstractControl() {
+            @Override
+            protected void controlUpdate(float tpf) {
+                DrawBatchEvent event = new DrawBatchEvent();
+                event.begin();
+                int strokes = 0;
+                BuiltStroke built;
+                while ((built = builtStrokes.poll()) != null) {
+                    if (built.layer.applyStroke(built)) {
+                        strokes++;
+                    }
+                }
+                int pages = layer.sync();
+                layer.buildThrottledStroke();
+                if ((pages > 0 || strokes > 0) && event.shouldCommit()) {
+                    event.pages = pages;
+                    event.strokes = strokes;
+                    event.segments = getSegmentCount();
+                    event.commit();
+                }
+            }
+
+            @Override
+            protected void controlRender(RenderManager rm, ViewPort vp) {
+            }
+        });
+        newLayer();
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public void add(Vector3f from, Vector3f to) {
+        LOG.debug("Draw from {} to {}", from, to);
+        layer.add(from, to);
+    }
+
+    /**
+     * Draw a copy of a shape, the turtle standing at the given position and rotation.
+     */
+    public void addShape(Shape shape, Vector3f position, Quaternion rotation) {
+        Mesh mesh = shapeMeshes.computeIfAbsent(shape, key -> newLineMesh(BufferUtils.createFloatBuffer(key.getSegments())));
+        Geometry copy = new Geometry(shape.getKey(), mesh);
+        copy.setMaterial(lineMaterial);
+        copy.setLocalTranslation(position);
+        copy.setLocalRotation(rotation);
+        layer.addCopy(shape, copy);
+    }
+
+    /**
+     * Drop everything drawn so far.
+     */
+    public void clear() {
+        node.detachChild(layer.node);
+        layer.release();
+        newLayer();
+    }
+
+    /**
+     * Remove the last segments of the current layer. A copy of a shape partly undone is replaced by the segments it
+     * keeps, drawn as any other.
+     */
+    public void undo(int segments) {
+        layer.undo(segments);
+    }
+
+    /**
+     * Drop the segments drawn over existing ones of the current layer from now on, or keep them all.
+     */
+    public void setDeduplicating(boolean deduplicating) {
+        this.deduplicating = deduplicating;
+        layer.setDeduplicating(deduplicating);
+    }
+
+    public boolean isDeduplicating() {
+        return deduplicating;
+    }
+
+    /**
+     * Draw thick strokes built by the given builder from now on, or lines with null.
+     */
+    public void setStroke(StrokeMeshBuilder stroke) {
+        this.stroke = stroke;
+        layer.restroke();
+    }
+
+    /**
+     * @return the number of segments in the current layer.
+     */
+    public long getSegmentCount() {
+        return layer.store.size() + layer.copiedSegments;
+    }
+
+    private void newLayer() {
+        layer = new Layer("layer " + epoch++);
+        node.attachChild(layer.node);
+        layer.setDeduplicating(deduplicating);
+    }
+
+    private class Layer {
+        private final Node node;
+        private final SegmentStore store = new SegmentStore();
+        private SegmentDeduplicator deduplicator;
+
+        // the meshes of each page of the store.
+        private final List<Page> pages = new ArrayList<>();
+
+        // first page out of date in its mesh, if any.
+        private int firstDirtyPage = Integer.MAX_VALUE;
+
+        // the page whose stroke was not built again yet because it grows, if any.
+        private int throttledPage = -1;
+
+        // copies of shapes, in drawing order.
+        private final List<Copy> copies = new ArrayList<>();
+        private long copiedSegments;
+
+        Layer(String name) {
+            this.node = new Node(name);
+        }
+
+        void add(Vector3f from, Vector3f to) {
+            if (deduplicator != null && !deduplicator.add(from.getX(), from.getY(), from.getZ(),
+                    to.getX(), to.getY(), to.getZ(), PEN)) {
+                return;
+            }
+            store.add(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ());
+            touch(store.size() - 1);
+        }
+
+        void addCopy(Shape shape, Geometry geometry) {
+            node.attachChild(geometry);
+            copies.add(new Copy(shape, geometry, store.size(), dropped()));
+            copiedSegments += shape.getSegmentCount();
+        }
+
+        void undo(long segments) {
+            while (segments > 0) {
+                Copy lastCopy = copies.isEmpty() ? null : copies.get(copies.size() - 1);
+                // segments stored, and duplicates dropped, since the last copy.
+                long drawnAfterLastCopy = lastCopy == null ? store.size() + dropped()
+                        : store.size() - lastCopy.storeSize + dropped() - lastCopy.dropped;
+                if (drawnAfterLastCopy > 0) {
+                    long undone = Math.min(segments, drawnAfterLastCopy);
+                    truncate(deduplicator == null ? store.size() - undone : deduplicator.undo(undone));
+                    segments -= undone;
+                } else if (lastCopy == null) {
+                    return;
+                } else {
+                    int copied = lastCopy.shape.getSegmentCount();
+                    node.detachChild(lastCopy.geometry);
+                    copies.remove(copies.size() - 1);
+                    copiedSegments -= copied;
+                    if (segments < copied) {
+                        addCopySegments(lastCopy, (int) (copied - segments));
+                    }
+                    segments -= copied;
+                }
+            }
+        }
+
+        /**
+         * Draw the first segments of a copy where the copy stands, out of its mesh.
+         */
+        private void addCopySegments(Copy copy, int count) {
+            float[] segments = copy.shape.getSegments();
+            Transform transform = copy.geometry.getLocalTransform();
+            Vector3f from = new Vector3f();
+            Vector3f to = new Vector3f();
+            for (int i = 0; i < count; i++) {
+                int offset = i * Shape.FLOATS_PER_SEGMENT;
+                from.set(segments[offset], segments[offset + 1], segments[offset + 2]);
+                to.set(segments[offset + 3], segments[offset + 4], segments[offset + 5]);
+                add(transform.transformVector(from, from), transform.transformVector(to, to));
+            }
+        }
+
+        void truncate(long segmentCount) {
+            store.truncate(segmentCount);
+            // detach the meshes of the released pages before anything else can render them.
+            while (pages.size() > store.getPageCount()) {
+                pages.remove(pages.size() - 1).detach();
+            }
+            int lastPage = (int) (segmentCount / store.getPageSegments());
+            if (segmentCount % store.getPageSegments() != 0 && lastPage < pages.size()) {
+                // its stroke shows the undone segments; a page not synced yet has no mesh.
+                pages.get(lastPage).showLines();
+            }
+            touch(segmentCount);
+            if (deduplicator != null) {
+                // the undone segments can be drawn again.
+                deduplicator.truncate(segmentCount);
+            }
+        }
+
+        void setDeduplicating(boolean deduplicating) {
+            if (!deduplicating) {
+                deduplicator = null;
+            } else if (deduplicator == null) {
+                deduplicator = new SegmentDeduplicator();
+                deduplicator.reset(store, PEN);
+            } else {
+                return;
+            }
+            // the duplicates dropped so far are forgotten, none was dropped before the copies from now on.
+            for (Copy copy : copies) {
+                copy.dropped = 0;
+            }
+        }
+
+        /**
+         * @return the duplicates dropped and not undone, which count for undo as drawn.
+         */
+        private long dropped() {
+            return deduplicator == null ? 0 : deduplicator.getDropped();
+        }
+
+        void touch(long segment) {
+            firstDirtyPage = (int) Math.min(firstDirtyPage, segment / store.getPageSegments());
+        }
+
+        /**
+         * @return the number of pages pushed to their mesh.
+         */
+        int sync() {
+            int pageCount = store.getPageCount();
+            int synced = Math.max(0, pageCount - firstDirtyPage);
+            for (int i = firstDirtyPage; i < pageCount; i++) {
+                FloatBuffer vertices = store.getPage(i).asFloatBuffer();
+                Page page;
+                if (i == pages.size()) {
+                    page = new Page(newPageGeometry(i, vertices));
+                    pages.add(page);
+                } else {
+                    page = pages.get(i);
+                    Mesh mesh = page.lines.getMesh();
+                    mesh.getBuffer(VertexBuffer.Type.Position).updateData(vertices);
+                    mesh.updateBound();
+                    mesh.updateCounts();
+                    page.lines.updateModelBound();
+                    // segments were only appended since the stroke, see truncate: the lines show the new ones.
+                    page.showGrowing();
+                }
+                page.version = ++pageVersion;
+                if (stroke != null) {
+                    buildStroke(i, page);
+                }
+            }
+            firstDirtyPage = Integer.MAX_VALUE;
+            return synced;
+        }
+
+        void restroke() {
+            for (int i = 0; i < pages.size(); i++) {
+                pages.get(i).showLines();
+                if (stroke != null) {
+                    buildStroke(i, pages.get(i));
+                }
+            }
+        }
+
+        void release() {
+            store.close();
+            pages.forEach(Page::detach);
+            pages.clear();
+        }
+
+        /**
+         * Build the stroke of the growing page once it waited long enough.
+         */
+        void buildThrottledStroke() {
+            if (throttledPage >= 0 && throttledPage < pages.size() && stroke != null) {
+                buildStroke(throttledPage, pages.get(throttledPage));
+            }
+        }
+
+        private void buildStroke(int index, Page page) {
+            if (page.building) {
+                // built again once the running build is done, see applyStroke.
+                return;
+            }
+            long now = System.nanoTime();
+            boolean growing = index == store.getPageCount() - 1 && store.getPageSize(index) < store.getPageSegments();
+            if (growing && now - page.buildStart < GROWING_STROKE_INTERVAL) {
+                // likely to change again by the next frame.
+                throttledPage = index;
+                return;
+            }
+            if (throttledPage == index) {
+                throttledPage = -1;
+            }
+            page.building = true;
+            page.buildStart = now;
+            // the store may release the page meanwhile: the builder gets a copy.
+            ByteBuffer content = store.getPage(index);
+            ByteBuffer snapshot = ByteBuffer.allocate(content.remaining()).order(ByteOrder.nativeOrder());
+            snapshot.put(content).flip();
+            FloatBuffer segments = snapshot.asFloatBuffer();
+
+            StrokeMeshBuilder builder = stroke;
+            long version = page.version;
+            CompletableFuture.supplyAsync(() -> builder.build(segments), ForkJoinPool.commonPool())
+                    .whenComplete((mesh, error) ->
+                            builtStrokes.add(new BuiltStroke(this, index, page, version, builder, mesh, error)));
+        }
+
+        /**
+         * @return whether the stroke was swapped in.
+         */
+        boolean applyStroke(BuiltStroke built) {
+            Page page = built.page;
+            page.building = false;
+            if (built.error != null) {
+                LOG.error("Unable to build the stroke of page {}", built.index, built.error);
+                return false;
+            }
+            if (this != layer || built.index >= pages.size() || pages.get(built.index) != page || stroke == null) {
+                // cleared, undone, or back to lines meanwhile.
+                built.mesh.release();
+                return false;
+            }
+            if (built.version != page.version || built.builder != stroke) {
+                built.mesh.release();
+                buildStroke(built.index, page);
+                return false;
+            }
+            page.showStroke(new Geometry("stroke " + built.index, newStrokeMesh(built.mesh)), built.mesh);
+            return true;
+        }
+
+        private Geometry newPageGeometry(int index, FloatBuffer vertices) {
+            Geometry lineGeometry = new Geometry("lines " + index, newLineMesh(vertices));
+            lineGeometry.setMaterial(lineMaterial);
+            node.attachChild(lineGeometry);
+            return lineGeometry;
+        }
+
+        /**
+         * The meshes of a page of the store: lines always up to date, and a stroke once built.
+         */
+        private class Page {
+            private final Geometry lines;
+            private Geometry strokeGeometry;
+            private StrokeMeshBuilder.StrokeMesh strokeMesh;
+            private long version;
+            private boolean building;
+            // System.nanoTime() when the last build started.
+            private long buildStart = System.nanoTime() - GROWING_STROKE_INTERVAL;
+
+            Page(Geometry lines) {
+                this.lines = lines;
+            }
+
+            void showLines() {
+                if (strokeGeometry != null) {
+                    dropStroke();
+                    node.attachChild(lines);
+                }
+            }
+
+            /**
+             * Lines over the stroke, for the segments appended since it was built.
+             */
+            void showGrowing() {
+                if (lines.getParent() == null) {
+                    node.attachChild(lines);
+                }
+            }
+
+            void showStroke(Geometry geometry, StrokeMeshBuilder.StrokeMesh mesh) {
+                geometry.setMaterial(strokeMaterial);
+                if (strokeGeometry != null) {
+                    dropStroke();
+                }
+                node.detachChild(lines);
+                strokeGeometry = geometry;
+                strokeMesh = mesh;
+                node.attachChild(strokeGeometry);
+            }
+
+            void detach() {
+                node.detachChild(lines);
+                if (strokeGeometry != null) {
+                    dropStroke();
+                }
+            }
+
+            /**
+             * Detach the stroke, and free its memory: it is never rendered again.
+             */
+            private void dropStroke() {
+                node.detachChild(strokeGeometry);
+                strokeMesh.release();
+                strokeGeometry = null;
+                strokeMesh = null;
+            }
+        }
+    }
+
+    private static class BuiltStroke {
+        private final Layer layer;
+        private final int index;
+        private final Layer.Page page;
+        private final long version;
+        private final StrokeMeshBuilder builder;
+        private final StrokeMeshBuilder.StrokeMesh mesh;
+        private final Throwable error;
+
+        BuiltStroke(Layer layer, int index, Layer.Page page, long version, StrokeMeshBuilder builder,
+                    StrokeMeshBuilder.StrokeMesh mesh, Throwable error) {
+            this.layer = layer;
+            this.index = index;
+            this.page = page;
+            this.version = version;
+            this.builder = builder;
+            this.mesh = mesh;
+            this.error = error;
+        }
+    }
+
+    private static class Copy {
+        private final Shape shape;
+        private final Geometry geometry;
+        // size of the store, and duplicates dropped, when the copy was drawn.
+        private final long storeSize;
+        private long dropped;
+
+        Copy(Shape shape, Geometry geometry, long storeSize, long dropped) {
+            this.shape = shape;
+            this.geometry = geometry;
+            this.storeSize = storeSize;
+            this.dropped = dropped;
+        }
+    }
+
+    private static Mesh newLineMesh(FloatBuffer vertices) {
+        Mesh lineMesh = new Mesh();
+
+        lineMesh.setMode(Mesh.Mode.Lines);
+        lineMesh.setLineWidth(4);
+        // not indexed: each pair of vertices is a segment.
+        lineMesh.setBuffer(VertexBuffer.Type.Position, 3, vertices);
+
+        lineMesh.updateBound();
+        lineMesh.updateCounts();
+        return lineMesh;
+    }
+
+    private static Mesh newStrokeMesh(StrokeMeshBuilder.StrokeMesh stroke) {
+        Mesh strokeMesh = new Mesh();
+
+        strokeMesh.setMode(Mesh.Mode.Triangles);
+        strokeMesh.setBuffer(VertexBuffer.Type.Position, 3, stroke.getPositions());
+        strokeMesh.setBuffer(VertexBuffer.Type.Normal, 3, stroke.getNormals());
+        strokeMesh.setBuffer(VertexBuffer.Type.Index, 3, stroke.getIndices());
+
+        strokeMesh.updateBound();
+        strokeMesh.updateCounts();
+        return strokeMesh;
+    }
+}
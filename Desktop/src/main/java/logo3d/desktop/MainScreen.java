@@ -13,6 +13,7 @@ import com.jme3.niftygui.NiftyJmeDisplay;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
 import com.jme3.scene.debug.Arrow;
 import com.jme3.util.SkyFactory;
 import de.lessvoid.nifty.Nifty;
@@ -22,9 +23,36 @@ import de.lessvoid.nifty.controls.ConsoleExecuteCommandEvent;
 import de.lessvoid.nifty.screen.Screen;
 import de.lessvoid.nifty.screen.ScreenController;
 import de.lessvoid.nifty.tools.Color;
+import logo3d.language.CoalescingTurtleActions;
+import logo3d.language.ExecutionLimitException;
+import logo3d.language.LibraryLoader;
+import logo3d.language.LogoParsers;
+import logo3d.language.LogoProfiler;
+import logo3d.language.OutputBuffer;
 import logo3d.language.Program;
+import logo3d.language.ScriptLoader;
+import logo3d.language.TurtleActionCallbacks;
+import logo3d.language.drawing.StrokeMeshBuilder;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -34,19 +62,55 @@ public class MainScreen extends AbstractAppState implements ScreenController {
 
     private static final Logger LOG = getLogger(MainScreen.class);
 
+    // lines kept between two frames, the console only shows the last few anyway.
+    private static final int OUTPUT_CAPACITY = 256;
+
     private Node rootNode;
     private TurtleControl turtleControl;
+
+    // turtle 0 first, then the turtles told by 'tell' and 'ask'; only used by the render thread.
+    private final List<TurtleControl> turtleControls = new ArrayList<>();
+    private Spatial turtleModel;
     private SimpleApplication app;
     private Program program;
 
     private Console console;
 
+    private ExecutorService assetLoader;
+
+    // the program is only ever run by this thread, so a long script never blocks the render thread.
+    private final ExecutorService interpreter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "interpreter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScriptLoader scriptLoader;
+    // only used by the interpreter thread.
+    private LogoProfiler profiler;
+    // the merging stage of each turtle, see 'merge on'; only used by the interpreter thread.
+    private final List<CoalescingTurtleActions> coalescers = new ArrayList<>();
+    private boolean mergingSegments;
+    private long initializeStart;
+    private boolean firstFrameLogged;
+
+    // lines printed and syntax errors, shown once per frame: a program printing in a loop drops lines, not frames.
+    private final OutputBuffer output = new OutputBuffer(OUTPUT_CAPACITY, OutputBuffer.Overflow.DROP);
+    private final ConsoleBatch consoleBatch = new ConsoleBatch();
+
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         super.initialize(stateManager, app);
         this.app = (SimpleApplication)app;
+        this.initializeStart = System.nanoTime();
 
-        // setup gui.
+        // heavy assets are loaded in parallel, and attached on the render thread once they are ready.
+        assetLoader = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "asset-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // setup gui first, so the console is usable immediately.
         NiftyJmeDisplay niftyDisplay = new NiftyJmeDisplay(app.getAssetManager(),
                 app.getInputManager(),
                 app.getAudioRenderer(),
@@ -57,17 +121,41 @@ public class MainScreen extends AbstractAppState implements ScreenController {
 
         // attach the nifty display to the gui view port as a processor
         app.getGuiViewPort().addProcessor(niftyDisplay);
+        logPhase("gui", initializeStart);
 
-        // setup skybox:
         rootNode = ((SimpleApplication)app).getRootNode();
-        rootNode.attachChild(SkyFactory.createSky(app.getAssetManager(), "Skybox/Skybox.dds", false));
 
-        // setup turtleControl
+        // setup skybox:
+        loadInBackground("skybox",
+                () -> SkyFactory.createSky(app.getAssetManager(), "Skybox/Skybox.dds", false),
+                rootNode::attachChild);
+
+        // setup turtleControl, with a placeholder model.
         this.turtleControl = new TurtleControl(app.getAssetManager(), rootNode);
-        this.program = new Program(turtleControl, console::outputError);
+        turtleControl.setOutput(output);
+        // merge runs like 'rt 1 lt 2' before they reach the action queue, segments stay as written for 'undo' unless
+        // merged too with 'merge on'.
+        CoalescingTurtleActions coalescer = new CoalescingTurtleActions(turtleControl);
+        coalescers.add(coalescer);
+        this.program = new Program(coalescer, output::error);
+        turtleControls.add(turtleControl);
+        program.setTurtleProvider(this::newTurtle);
+        // periods are not skipped unless asked for with 'periods on': 'undo' would not see the skipped segments.
+        this.scriptLoader = new ScriptLoader(program);
+        // fill the parser cache before the first command typed in the console.
+        interpreter.submit(LogoParsers::warmUp);
+        loadInBackground("turtle model",
+                () -> app.getAssetManager().loadModel("Models/turtle/turtle.j3o"),
+                this::setTurtleModel);
+
+        // performance overlay
+        stateManager.attach(new PerformanceHud(niftyDisplay.getNifty().getCurrentScreen(), turtleControl, program, rootNode));
 
-        // setup paper
-        new Paper(app.getAssetManager(), rootNode);
+        // setup paper, plain until its texture is loaded
+        Paper paper = new Paper(app.getAssetManager(), rootNode);
+        loadInBackground("paper texture",
+                () -> app.getAssetManager().loadTexture(Paper.TEXTURE),
+                paper::setTexture);
 
         // setup lights
         DirectionalLight sun1 = new DirectionalLight();
@@ -83,6 +171,51 @@ public class MainScreen extends AbstractAppState implements ScreenController {
 
         // setup debug axis
         attachCoordinateAxes(Vector3f.UNIT_Y);
+        logPhase("initialize", initializeStart);
+    }
+
+    @Override
+    public void update(float tpf) {
+        super.update(tpf);
+        if (!firstFrameLogged) {
+            firstFrameLogged = true;
+            logPhase("first frame", initializeStart);
+        }
+        if (output.drain(consoleBatch) > 0) {
+            consoleBatch.flush();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        assetLoader.shutdownNow();
+        scriptLoader.cancel();
+        interpreter.shutdownNow();
+    }
+
+    /**
+     * Run the loader on the asset loader pool, then hand the result over to the render thread.
+     */
+    private <T> void loadInBackground(String phase, Callable<T> loader, Consumer<T> onLoaded) {
+        assetLoader.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                T asset = loader.call();
+                logPhase(phase + " loaded", start);
+                app.enqueue(() -> {
+                    onLoaded.accept(asset);
+                    logPhase(phase + " attached", initializeStart);
+                    return null;
+                });
+            } catch (Exception e) {
+                LOG.error("Unable to load {}", phase, e);
+            }
+        });
+    }
+
+    private static void logPhase(String phase, long since) {
+        LOG.info("startup: {} in {} ms", phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since));
     }
 
     private void attachCoordinateAxes(Vector3f pos){
@@ -118,9 +251,216 @@ public class MainScreen extends AbstractAppState implements ScreenController {
 
     @NiftyEventSubscriber(id="consoleCommande")
     public void onConsoleExecuteCommandEvent(final String id, final ConsoleExecuteCommandEvent cEvent ){
-        program.interpret(cEvent.getCommandLine());
+        String commandLine = cEvent.getCommandLine().trim();
+        if (commandLine.equals("cancel")) {
+            // handled right away: the interpreter thread is busy with the script.
+            scriptLoader.cancel();
+        } else if (commandLine.startsWith("load ")) {
+            load(Paths.get(StringUtils.strip(commandLine.substring("load ".length()).trim(), "\"")));
+        } else if (commandLine.startsWith("library ")) {
+            loadLibrary(Paths.get(StringUtils.strip(commandLine.substring("library ".length()).trim(), "\"")));
+        } else if (commandLine.equals("dedup on") || commandLine.equals("dedup off")) {
+            // the turtles share the drawing of turtle 0.
+            turtleControl.setDeduplicating(commandLine.endsWith("on"));
+        } else if (commandLine.equals("periods on") || commandLine.equals("periods off")) {
+            boolean skippingPeriods = commandLine.endsWith("on");
+            interpreter.submit(() -> program.setSkippingPeriods(skippingPeriods));
+        } else if (commandLine.equals("merge on") || commandLine.equals("merge off")) {
+            boolean merging = commandLine.endsWith("on");
+            interpreter.submit(() -> {
+                mergingSegments = merging;
+                coalescers.forEach(coalescer -> coalescer.setMergingSegments(merging));
+            });
+        } else if (commandLine.startsWith("stroke ")) {
+            stroke(commandLine.substring("stroke ".length()).trim().split("\\s+"));
+        } else if (commandLine.equals("profile start")) {
+            interpreter.submit(this::startProfiling);
+        } else if (commandLine.startsWith("profile stop ")) {
+            Path path = Paths.get(StringUtils.strip(commandLine.substring("profile stop ".length()).trim(), "\""));
+            interpreter.submit(() -> stopProfiling(path));
+        } else {
+            interpreter.submit(() -> program.interpret(commandLine));
+        }
+    }
+
+    private void load(Path path) {
+        console.output("loading " + path + " (type 'cancel' to stop)");
+        // a 'cancel' typed while the load is queued behind a long command cancels it too.
+        ScriptLoader.Ticket ticket = scriptLoader.prepare();
+        interpreter.submit(() -> {
+            try {
+                scriptLoader.load(ticket, path, progress -> onRenderThread(() -> console.output(path.getFileName() + " " + progress)));
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Unable to load {}", path, e);
+                onRenderThread(() -> console.outputError("unable to load " + path + ": " + e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Load a script of procedure declarations, parsed in parallel, their bodies on first invocation.
+     */
+    private void loadLibrary(Path path) {
+        console.output("loading library " + path);
+        interpreter.submit(() -> {
+            try {
+                LibraryLoader libraryLoader = new LibraryLoader(program);
+                libraryLoader.setLazy(true);
+                int procedures = libraryLoader.load(path);
+                onRenderThread(() -> console.output(path.getFileName() + ": " + procedures + " procedures"));
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Unable to load {}", path, e);
+                onRenderThread(() -> console.outputError("unable to load " + path + ": " + e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * 'stroke off', 'stroke tube [radius [sides]]' or 'stroke ribbon [radius]'.
+     */
+    private void stroke(String[] arguments) {
+        if (arguments[0].equals("off")) {
+            setStroke(null);
+            return;
+        }
+        try {
+            StrokeMeshBuilder.Profile profile = StrokeMeshBuilder.Profile.valueOf(arguments[0].toUpperCase(Locale.ROOT));
+            float radius = arguments.length > 1 ? Float.parseFloat(arguments[1]) : 0.05f;
+            int sides = arguments.length > 2 ? Integer.parseInt(arguments[2]) : 6;
+            setStroke(new StrokeMeshBuilder(profile, radius, sides));
+        } catch (IllegalArgumentException e) {
+            console.outputError("usage: stroke off | stroke tube [radius [sides]] | stroke ribbon [radius] ("
+                    + e.getMessage() + ")");
+        }
+    }
+
+    private void setStroke(StrokeMeshBuilder stroke) {
+        // the turtles share the drawing of turtle 0.
+        turtleControl.setStroke(stroke);
+    }
+
+    /**
+     * Create a turtle the first time it is told something, on the render thread. Runs on the interpreter thread.
+     */
+    private TurtleActionCallbacks newTurtle(int id) {
+        Future<TurtleControl> created = app.enqueue(() -> {
+            // all the turtles fill the pages of the first one's drawing, deduplicated and stroked with it.
+            TurtleControl control = new TurtleControl(app.getAssetManager(), rootNode, turtleControl.getDrawing());
+            control.setOutput(output);
+            if (turtleModel != null) {
+                control.setModel(turtleModel.clone());
+            }
+            turtleControls.add(control);
+            return control;
+        });
+        try {
+            // each turtle merges its own runs, on the pool thread drawing it when told with others.
+            CoalescingTurtleActions coalescer = new CoalescingTurtleActions(created.get());
+            coalescer.setMergingSegments(mergingSegments);
+            coalescers.add(coalescer);
+            return coalescer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionLimitException("Program was interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to create turtle " + id, e.getCause());
+        }
+    }
+
+    /**
+     * Replace the placeholder of all the turtles by the loaded model.
+     */
+    private void setTurtleModel(Spatial model) {
+        turtleModel = model;
+        for (int i = 0; i < turtleControls.size(); i++) {
+            turtleControls.get(i).setModel(i == 0 ? model : model.clone());
+        }
     }
 
+    /**
+     * Profile what is interpreted from now on. Runs on the interpreter thread.
+     */
+    private void startProfiling() {
+        if (profiler == null) {
+            profiler = new LogoProfiler();
+            program.setProfiler(profiler);
+            profiler.start();
+        }
+        onRenderThread(() -> console.output("profiling (type 'profile stop <file>' to write it)"));
+    }
+
+    /**
+     * Write the time samples to the file, and the turtle commands next to it. Runs on the interpreter thread.
+     */
+    private void stopProfiling(Path path) {
+        if (profiler == null) {
+            onRenderThread(() -> console.outputError("not profiling, type 'profile start' first"));
+            return;
+        }
+        profiler.stop();
+        program.setProfiler(null);
+        Path commandsPath = path.resolveSibling(path.getFileName() + ".commands");
+        try (Writer samples = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+             Writer commands = Files.newBufferedWriter(commandsPath, StandardCharsets.UTF_8)) {
+            profiler.writeCollapsedSamples(samples);
+            profiler.writeCollapsedCommands(commands);
+            long sampleCount = profiler.getSampleCount();
+            onRenderThread(() -> console.output(sampleCount + " samples written to " + path + ", turtle commands to "
+                    + commandsPath));
+        } catch (IOException e) {
+            LOG.error("Unable to write the profile to {}", path, e);
+            onRenderThread(() -> console.outputError("unable to write " + path + ": " + e.getMessage()));
+        }
+        profiler = null;
+    }
+
+    private void onRenderThread(Runnable runnable) {
+        app.enqueue(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Joins the lines drained in a row with the same kind, so each run takes one call to the console.
+     */
+    private class ConsoleBatch implements OutputBuffer.Sink {
+
+        private final StringBuilder text = new StringBuilder();
+        private boolean error;
+
+        @Override
+        public void line(String line, boolean error, int repeats) {
+            if (text.length() > 0 && error != this.error) {
+                flush();
+            }
+            this.error = error;
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(line);
+            if (repeats > 1) {
+                text.append(" (x").append(repeats).append(')');
+            }
+        }
+
+        @Override
+        public void dropped(long lines) {
+            line(lines + " lines dropped", true, 1);
+        }
+
+        void flush() {
+            if (text.length() == 0) {
+                return;
+            }
+            if (error) {
+                console.outputError(text.toString());
+            } else {
+                console.output(text.toString());
+            }
+            text.setLength(0);
+        }
+    }
 
     @Override
     public void onStartScreen() {
@@ -2,6 +2,7 @@ package logo3d.desktop;
 
 import com.jme3.asset.AssetManager;
 import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
@@ -12,15 +13,28 @@ import com.jme3.texture.Texture;
  * Created by SylvainMaillard on 30/03/2015.
  */
 public class Paper {
+
+    public static final String TEXTURE = "Textures/watercolor-paper.jpg";
+
+    private final Material cube1Mat;
+
     public Paper(AssetManager assetManager, Node rootNode) {
-        Texture texture = assetManager.loadTexture("Textures/watercolor-paper.jpg");
         Box cube1Mesh = new Box(50,0.2f,50f);
         Geometry cube1Geo = new Geometry("My Textured Paper", cube1Mesh);
         cube1Geo.setLocalTranslation(new Vector3f(0f,-0.2f,0f));
-        Material cube1Mat = new Material(assetManager,
+        cube1Mat = new Material(assetManager,
                 "Common/MatDefs/Misc/Unshaded.j3md");
-        cube1Mat.setTexture("ColorMap", texture);
+        // plain paper color until the texture is loaded (see setTexture)
+        cube1Mat.setColor("Color", new ColorRGBA(0.95f, 0.93f, 0.88f, 1f));
         cube1Geo.setMaterial(cube1Mat);
         rootNode.attachChild(cube1Geo);
     }
+
+    /**
+     * Must be called from the render thread.
+     */
+    public void setTexture(Texture texture) {
+        cube1Mat.clearParam("Color");
+        cube1Mat.setTexture("ColorMap", texture);
+    }
 }
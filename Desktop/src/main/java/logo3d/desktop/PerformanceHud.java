@@ -0,0 +1,209 @@
+package logo3d.desktop;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.input.InputManager;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import de.lessvoid.nifty.controls.Label;
+import de.lessvoid.nifty.elements.Element;
+import de.lessvoid.nifty.screen.Screen;
+import logo3d.language.Program;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Performance overlay, toggled with F3: frame time percentiles, turtle action queue, drawing size, memory, GC and
+ * interpreter throughput.
+ *
+ * Frame times are recorded every frame in a ring buffer; everything else, including the text of the overlay, is
+ * only computed a few times per second so the overlay itself costs next to nothing.
+ */
+public class PerformanceHud extends AbstractAppState implements ActionListener {
+
+    private static final String TOGGLE = "TogglePerformanceHud";
+
+    // seconds between two refreshes of the overlay.
+    private static final float REFRESH_INTERVAL = 0.5f;
+
+    // number of frames kept for the percentiles.
+    private static final int FRAME_HISTORY = 512;
+
+    private final Screen screen;
+    private final TurtleControl turtleControl;
+    private final Program program;
+    private final Node rootNode;
+
+    private final float[] frameTimes = new float[FRAME_HISTORY];
+    private final float[] sortedFrameTimes = new float[FRAME_HISTORY];
+    private int frameCount;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final BufferPoolMXBean directBuffers = directBufferPool();
+
+    private InputManager inputManager;
+    private Element hud;
+    private Label hudText;
+    private boolean visible;
+
+    // state at the last refresh, to compute rates.
+    private float sinceRefresh;
+    private long lastCompletedActions;
+    private long lastExecutedCommands;
+    private long lastGcCount;
+    private long lastGcTime;
+
+    public PerformanceHud(Screen screen, TurtleControl turtleControl, Program program, Node rootNode) {
+        this.screen = screen;
+        this.turtleControl = turtleControl;
+        this.program = program;
+        this.rootNode = rootNode;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        hud = screen.findElementByName("hud");
+        hudText = screen.findNiftyControl("hudText", Label.class);
+
+        inputManager = app.getInputManager();
+        inputManager.addMapping(TOGGLE, new KeyTrigger(KeyInput.KEY_F3));
+        inputManager.addListener(this, TOGGLE);
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        inputManager.deleteMapping(TOGGLE);
+        inputManager.removeListener(this);
+    }
+
+    @Override
+    public void onAction(String name, boolean isPressed, float tpf) {
+        if (TOGGLE.equals(name) && isPressed) {
+            visible = !visible;
+            hud.setVisible(visible);
+            if (visible) {
+                // rates are computed from now on, the text shows up at the next refresh.
+                sinceRefresh = 0f;
+                lastCompletedActions = turtleControl.getCompletedActions();
+                lastExecutedCommands = program.getExecutedCommands();
+                lastGcCount = gcCount();
+                lastGcTime = gcTime();
+            }
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        frameTimes[frameCount++ % FRAME_HISTORY] = tpf;
+
+        sinceRefresh += tpf;
+        if (sinceRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+        if (visible) {
+            refresh(sinceRefresh);
+        }
+        sinceRefresh = 0f;
+    }
+
+    private void refresh(float elapsed) {
+        int frames = Math.min(frameCount, FRAME_HISTORY);
+        System.arraycopy(frameTimes, 0, sortedFrameTimes, 0, frames);
+        Arrays.sort(sortedFrameTimes, 0, frames);
+
+        long completedActions = turtleControl.getCompletedActions();
+        long executedCommands = program.getExecutedCommands();
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "frame ms  p50 %.1f  p95 %.1f  p99 %.1f  max %.1f\n",
+                percentile(frames, 0.50f), percentile(frames, 0.95f), percentile(frames, 0.99f),
+                percentile(frames, 1f)));
+        text.append(String.format(Locale.ROOT, "actions  queued %d  done %.0f/s\n",
+                turtleControl.getQueuedActions(), rate(completedActions - lastCompletedActions, elapsed)));
+        text.append(String.format(Locale.ROOT, "segments %d  geometries %d\n",
+                turtleControl.getDrawing().getSegmentCount(), countGeometries()));
+        text.append(String.format(Locale.ROOT, "heap %d/%d MB  direct %d MB\n",
+                toMegaBytes(memory.getHeapMemoryUsage().getUsed()), toMegaBytes(memory.getHeapMemoryUsage().getMax()),
+                directBuffers == null ? 0 : toMegaBytes(directBuffers.getMemoryUsed())));
+        text.append(String.format(Locale.ROOT, "gc %d collections, %d ms paused\n", gcCount - lastGcCount, gcTime - lastGcTime));
+        text.append(String.format(Locale.ROOT, "interpreter %.0f commands/s",
+                rate(executedCommands - lastExecutedCommands, elapsed)));
+        hudText.setText(text.toString());
+
+        lastCompletedActions = completedActions;
+        lastExecutedCommands = executedCommands;
+        lastGcCount = gcCount;
+        lastGcTime = gcTime;
+    }
+
+    /**
+     * @return the frame time in milliseconds below which the given fraction of the recorded frames fall.
+     */
+    private float percentile(int frames, float fraction) {
+        if (frames == 0) {
+            return 0f;
+        }
+        int index = Math.min(frames - 1, (int) Math.ceil(fraction * frames) - 1);
+        return sortedFrameTimes[Math.max(0, index)] * 1000f;
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            count += Math.max(0, garbageCollector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            time += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private int countGeometries() {
+        int[] count = new int[1];
+        rootNode.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private static float rate(long count, float elapsed) {
+        return elapsed <= 0f ? 0f : count / elapsed;
+    }
+
+    private static long toMegaBytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    private static BufferPoolMXBean directBufferPool() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
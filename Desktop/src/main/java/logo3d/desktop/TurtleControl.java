@@ -2,6 +2,7 @@ package logo3d.desktop;
 
 import com.jme3.asset.AssetManager;
 import com.jme3.material.Material;
+import com.jme3.material.RenderState;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
@@ -9,13 +10,19 @@ import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.*;
 import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.shape.Box;
+import logo3d.language.OutputBuffer;
+import logo3d.language.Shape;
 import logo3d.language.TurtleActionCallbacks;
+import logo3d.desktop.jfr.TurtleActionEvent;
+import logo3d.language.drawing.StrokeMeshBuilder;
 import org.slf4j.Logger;
 
-import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.jme3.math.FastMath.PI;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -27,14 +34,25 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
 
     private static final Logger LOG = getLogger(TurtleControl.class);
 
-    private final Material lineMaterial;
     private final Node rootNode;
 
     private float speed = 4f;
 
+    // where the turtle starts, and goes back on 'home'.
+    private static final Vector3f HOME = new Vector3f(0f, 0.1f, 0f);
+
+    private final Drawing drawing;
+
+    // only read and written by the thread telling the turtle, one at a time, see TranslateAction.
+    private boolean penDown = true;
+
     // initial direction
     private Vector3f direction = Vector3f.UNIT_Z;
     private final Node turtle;
+    private Spatial model;
+
+    // where 'print' writes, read by the interpreter thread.
+    private volatile OutputBuffer output;
 
     public enum Direction {
         LEFT(1), RIGHT(1), FORWARD(-1), BACKWARD(1);
@@ -57,6 +75,10 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
             this.done.set(false);
         }
 
+        public TurtleAction() {
+            this(null);
+        }
+
         abstract void doIt(float tpf);
 
         public void start() {
@@ -73,37 +95,84 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
 
     public class TranslateAction extends TurtleAction {
 
-        private Vector3f initialPosition;
+        protected Vector3f initialPosition;
+        protected Vector3f targetPosition;
 
         private float currentTranslationLimit = 1.0f;
 
+        // captured when the action is queued, pen commands are not animated.
+        private final boolean drawing;
+
         public TranslateAction(Direction activeDirection, float increment) {
             super(activeDirection);
             currentTranslationLimit = increment;
+            drawing = penDown;
             LOG.info("will translate {}, {}", activeDirection, increment);
         }
 
         @Override
         public void start() {
             initialPosition = turtle.getLocalTranslation().clone();
+            targetPosition = initialPosition.add(direction.mult(currentTranslationLimit * activeDirection.speedCoefficient));
         }
 
         @Override
         void doIt(float tpf) {
-            turtle.move(direction.mult(speed * tpf * activeDirection.speedCoefficient));
+            Vector3f toTarget = targetPosition.subtract(turtle.getLocalTranslation());
+            float step = speed * tpf;
             // check if we have to stop
-            // get distance between current position and current one
-            float distance = initialPosition.distance(turtle.getLocalTranslation());
-            if (distance >= currentTranslationLimit) {
-                // stop !
-                LOG.debug("STOP ! distance = {}", distance);
-                // ok now draw:
-                draw(initialPosition);
+            if (toTarget.length() <= step) {
+                // stop exactly on the target !
+                turtle.setLocalTranslation(targetPosition);
+                LOG.debug("STOP ! distance = {}", initialPosition.distance(targetPosition));
+                // ok now draw, unless the pen is up:
+                if (drawing) {
+                    draw(initialPosition);
+                }
                 setDone(true);
+            } else {
+                turtle.move(toTarget.normalizeLocal().multLocal(step));
             }
         }
     }
 
+    /**
+     * Move to an absolute position, whatever the current direction.
+     */
+    public class MoveToAction extends TranslateAction {
+
+        private final Vector3f destination;
+
+        public MoveToAction(Vector3f destination) {
+            super(Direction.FORWARD, 0f);
+            this.destination = destination;
+        }
+
+        @Override
+        public void start() {
+            initialPosition = turtle.getLocalTranslation().clone();
+            targetPosition = destination;
+        }
+    }
+
+    /**
+     * Done in a single frame, in queue order: pen-less changes of the turtle or of the drawing.
+     */
+    public class InstantAction extends TurtleAction {
+
+        private final Runnable runnable;
+
+        public InstantAction(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        @Override
+        void doIt(float tpf) {
+            runnable.run();
+            setDone(true);
+        }
+    }
+
     public class TurnAction extends TurtleAction {
         private float currentRotation = 0f;
         private float currentRotationLimit = PI /2;
@@ -120,7 +189,9 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
         @Override
         public void start() {
             localRotation = turtle.getLocalRotation().clone();
-            targetRotation = new Quaternion().fromAngles(0, toRadian(currentRotationLimit), 0).mult(localRotation);
+            // seen from above, a right turn is clockwise: a negative angle around Y.
+            float angle = activeDirection == Direction.RIGHT ? -currentRotationLimit : currentRotationLimit;
+            targetRotation = new Quaternion().fromAngles(0, toRadian(angle), 0).mult(localRotation);
             LOG.debug("localRotation: {}",localRotation);
             LOG.debug("target rotation  {}", targetRotation);
         }
@@ -145,36 +216,81 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
         }
     }
 
-    private Queue<TurtleAction> actionQueue = new LinkedList<>();
+    // filled by the interpreter thread, consumed by the render thread.
+    private Queue<TurtleAction> actionQueue = new ConcurrentLinkedQueue<>();
+
+    // ConcurrentLinkedQueue.size() walks the whole queue: keep count of it.
+    private final AtomicInteger queuedActions = new AtomicInteger();
+
+    // only updated by the render thread.
+    private long completedActions;
 
     private TurtleAction currentAction;
 
+    // recording of the current action, only committed when enabled in the flight recorder.
+    private TurtleActionEvent currentActionEvent;
+    private int currentActionFrames;
+
     public TurtleControl(AssetManager assetManager, Node rootNode) {
-        Spatial spatial = assetManager.loadModel("Models/turtle/turtle.j3o");
+        this(assetManager, rootNode, newDrawing(assetManager));
+        rootNode.attachChild(drawing.getNode());
+    }
 
-        spatial.addControl(this);
+    /**
+     * A turtle drawing in the drawing of another one, so that all the turtles fill the same pages and meshes. What
+     * changes the drawing is shared too: 'cs' clears it for all, and 'undo' removes its last segments, whichever
+     * turtle drew them.
+     */
+    public TurtleControl(AssetManager assetManager, Node rootNode, Drawing drawing) {
         this.rootNode = rootNode;
+        this.drawing = drawing;
 
-        //Get the center of the mesh (no matter the original pivot)
-        Vector3f center = spatial.getWorldBound().getCenter();
-        LOG.debug("{}",center);
-
-//Create the node to use as pivot
-        turtle = new Node();
-        turtle.setLocalTranslation(center.setY(0.1f));
-        turtle.attachChild(spatial);
+        // the pivot node carries the control: the model below it can be swapped once it is loaded.
+        turtle = new Node("turtle");
+        turtle.setLocalTranslation(HOME);
+        turtle.addControl(this);
 
-//Reverse the pivot to match the center of the mesh
-        spatial.setLocalTranslation(center.negate());
+        // lightweight placeholder until the real model arrives (see setModel)
+        Material placeholderMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        placeholderMaterial.setColor("Color", ColorRGBA.Green);
+        model = new Geometry("turtle placeholder", new Box(0.3f, 0.1f, 0.4f));
+        model.setMaterial(placeholderMaterial);
+        turtle.attachChild(model);
 
         rootNode.attachChild(turtle);
+    }
 
+    private static Drawing newDrawing(AssetManager assetManager) {
         // add material
-        Material mat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
-        mat.getAdditionalRenderState().setWireframe(true);
-        mat.setColor("Color", ColorRGBA.Red);
+        Material lineMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        lineMaterial.getAdditionalRenderState().setWireframe(true);
+        lineMaterial.setColor("Color", ColorRGBA.Red);
+
+        // lit, and seen from both sides for ribbons.
+        Material strokeMaterial = new Material(assetManager, "Common/MatDefs/Light/Lighting.j3md");
+        strokeMaterial.setBoolean("UseMaterialColors", true);
+        strokeMaterial.setColor("Diffuse", ColorRGBA.Red);
+        strokeMaterial.setColor("Ambient", ColorRGBA.Red.mult(0.4f));
+        strokeMaterial.getAdditionalRenderState().setFaceCullMode(RenderState.FaceCullMode.Off);
+
+        return new Drawing(lineMaterial, strokeMaterial);
+    }
 
-        lineMaterial = mat;
+    /**
+     * Replace the current turtle model (the placeholder at first). Must be called from the render thread.
+     */
+    public void setModel(Spatial spatial) {
+        turtle.detachChild(model);
+
+        //Get the center of the mesh (no matter the original pivot)
+        Vector3f center = spatial.getWorldBound().getCenter();
+        LOG.debug("{}",center);
+
+        //Reverse the pivot to match the center of the mesh
+        spatial.setLocalTranslation(center.negate());
+        turtle.attachChild(spatial);
+
+        model = spatial;
     }
 
     @Override
@@ -186,15 +302,27 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
         // if no action, but we got something to do:
         if (currentAction == null) {
             currentAction = actionQueue.poll();
+            currentActionEvent = new TurtleActionEvent();
+            currentActionEvent.queued = queuedActions.decrementAndGet();
+            currentActionFrames = 0;
+            currentActionEvent.begin();
             currentAction.start();
         }
         // progress the current action.
         currentAction.doIt(tpf);
+        currentActionFrames++;
 
         // check if it is finished
         if (currentAction.isDone()) {
+            if (currentActionEvent.shouldCommit()) {
+                currentActionEvent.action = currentAction.getClass().getSimpleName();
+                currentActionEvent.frames = currentActionFrames;
+                currentActionEvent.commit();
+            }
+            currentActionEvent = null;
             // set to null and we will pickup the next action on the next frame
             currentAction = null;
+            completedActions++;
             LOG.debug("current action is done");
         }
     }
@@ -211,12 +339,28 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
         return degree / 180 * PI;
     }
 
+    private void enqueue(TurtleAction action) {
+        queuedActions.incrementAndGet();
+        actionQueue.offer(action);
+    }
+
+    /**
+     * @return the number of actions waiting in the queue, the current one excluded.
+     */
+    public int getQueuedActions() {
+        return queuedActions.get();
+    }
+
+    public long getCompletedActions() {
+        return completedActions;
+    }
+
     public void translate(Direction direction, float increment) {
-        actionQueue.offer(new TranslateAction(direction, increment));
+        enqueue(new TranslateAction(direction, increment));
     }
 
     public void turn(Direction direction, float degree) {
-        actionQueue.offer(new TurnAction(direction, degree));
+        enqueue(new TurnAction(direction, degree));
     }
 
     public void forward(float i) {
@@ -242,30 +386,99 @@ public class TurtleControl extends AbstractControl implements TurtleActionCallba
        turn (Direction.RIGHT, degree);
     }
 
-    public void draw(Vector3f prevPos) {
+    @Override
+    public void penUp() {
+        penDown = false;
+    }
 
-        Mesh lineMesh = new Mesh();
+    @Override
+    public void penDown() {
+        penDown = true;
+    }
 
-        lineMesh.setMode(Mesh.Mode.Lines);
-        lineMesh.setLineWidth(4);
+    /**
+     * Printed lines are written as soon as the program prints them, ahead of the queued moves.
+     */
+    @Override
+    public void print(String msg) {
+        OutputBuffer output = this.output;
+        if (output == null) {
+            TurtleActionCallbacks.super.print(msg);
+        } else {
+            output.print(msg);
+        }
+    }
 
-        Vector3f localTranslation = turtle.getLocalTranslation();
-        lineMesh.setBuffer(VertexBuffer.Type.Position, 3, new float[]{
-                prevPos.getX(), prevPos.getY(), prevPos.getZ(),
-                localTranslation.getX(), localTranslation.getY(), localTranslation.getZ()});
+    @Override
+    public void home() {
+        enqueue(new MoveToAction(HOME));
+        enqueue(new InstantAction(() -> {
+            turtle.setLocalRotation(Quaternion.IDENTITY);
+            direction = Vector3f.UNIT_Z;
+        }));
+    }
 
-        LOG.debug("Draw from {} to {}", prevPos, localTranslation);
+    @Override
+    public void setXY(float x, float y) {
+        // the turtle starts heading to -Z, which is the Logo Y axis.
+        enqueue(new MoveToAction(new Vector3f(x, HOME.getY(), -y)));
+    }
 
-        lineMesh.setBuffer(VertexBuffer.Type.Index, 2, new short[]{0, 1});
+    @Override
+    public void clearScreen() {
+        enqueue(new InstantAction(drawing::clear));
+    }
 
-        lineMesh.updateBound();
-        lineMesh.updateCounts();
+    @Override
+    public void undo(int segments) {
+        enqueue(new InstantAction(() -> drawing.undo(segments)));
+    }
 
-        Geometry lineGeometry = new Geometry("line", lineMesh);
+    /**
+     * Drawn at once, as a copy of the mesh of the shape: the turtle jumps to the end of the shape.
+     */
+    @Override
+    public void drawShape(Shape shape) {
+        boolean drawn = penDown && shape.getSegmentCount() > 0;
+        enqueue(new InstantAction(() -> {
+            Vector3f position = turtle.getLocalTranslation().clone();
+            Quaternion rotation = turtle.getLocalRotation().clone();
+            if (drawn) {
+                drawing.addShape(shape, position, rotation);
+            }
+            turtle.setLocalTranslation(position.addLocal(rotation.mult(new Vector3f(shape.getEndX(), 0f, shape.getEndZ()))));
+            Quaternion endRotation = new Quaternion().fromAngles(0, toRadian(shape.getEndHeading()), 0).mult(rotation);
+            turtle.setLocalRotation(endRotation);
+            direction = endRotation.getRotationColumn(2);
+        }));
+    }
 
-        lineGeometry.setMaterial(lineMaterial);
+    /**
+     * Drop the segments drawn over existing ones, from this point of the queue on.
+     */
+    public void setDeduplicating(boolean deduplicating) {
+        enqueue(new InstantAction(() -> drawing.setDeduplicating(deduplicating)));
+    }
 
-        rootNode.attachChild(lineGeometry);
+    /**
+     * Draw thick strokes from this point of the queue on, or lines with null.
+     */
+    public void setStroke(StrokeMeshBuilder stroke) {
+        enqueue(new InstantAction(() -> drawing.setStroke(stroke)));
+    }
 
+    /**
+     * Write the printed lines to that buffer, or log them with null.
+     */
+    public void setOutput(OutputBuffer output) {
+        this.output = output;
+    }
+
+    public Drawing getDrawing() {
+        return drawing;
+    }
+
+    public void draw(Vector3f prevPos) {
+        drawing.add(prevPos, turtle.getLocalTranslation());
     }
 }
@@ -0,0 +1,33 @@
+package logo3d.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The changes of the drawing pushed to its meshes in a frame. Only committed for frames that changed something.
+ */
+@Name("logo3d.DrawBatch")
+@Label("Draw Batch")
+@Category({"Logo3d", "Drawing"})
+@Description("The changes of the drawing pushed to its meshes in a frame")
+@Enabled(false)
+@StackTrace(false)
+public class DrawBatchEvent extends Event {
+
+    @Label("Pages")
+    @Description("Pages of segments pushed to their line mesh")
+    public int pages;
+
+    @Label("Strokes")
+    @Description("Stroke meshes built on the fork-join pool and swapped in")
+    public int strokes;
+
+    @Label("Segments")
+    @Description("Segments in the current layer, copies of shapes included")
+    public long segments;
+}
@@ -0,0 +1,32 @@
+package logo3d.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An action of the turtle, from its start to the frame it is done in.
+ */
+@Name("logo3d.TurtleAction")
+@Label("Turtle Action")
+@Category({"Logo3d", "Turtle"})
+@Description("An action of the turtle, from its start to the frame it is done in")
+@Enabled(false)
+@StackTrace(false)
+public class TurtleActionEvent extends Event {
+
+    @Label("Action")
+    public String action;
+
+    @Label("Frames")
+    @Description("Frames the action was animated over")
+    public int frames;
+
+    @Label("Queued Actions")
+    @Description("Actions waiting behind it when it started")
+    public int queued;
+}
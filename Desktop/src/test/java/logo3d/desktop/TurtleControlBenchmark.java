@@ -0,0 +1,348 @@
+package logo3d.desktop;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.jme3.system.JmeSystem;
+
+import java.io.Writer;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of {@link TurtleControl} and its {@link Drawing} as they grow, in a jME application started with a
+ * headless context: no window nor GPU needed, so it runs on any build machine.
+ *
+ * For each size (10k, 100k and 1M by default, or the 'benchmark.sizes' system property, comma separated):
+ * - queued-actions: that many actions are queued at once, then frames are run with the queue full,
+ * - attached-segments: that many segments are attached to the drawing, then the turtle draws one more per frame.
+ *
+ * Frames are run by the benchmark itself on the jME thread, with a fixed time per frame long enough for any action
+ * to be done within its first frame, so results do not depend on the speed of the machine. Each frame measures
+ * the logical update of the scene (the controls, TurtleControl.controlUpdate and the drawing sync) apart from the
+ * geometric update (transforms and bounds), and the bytes allocated by the jME thread; collections and their
+ * duration are counted for the whole run of a scenario.
+ *
+ * Results are written as JSON, to the file given as first argument (target/benchmark/turtle-control.json by
+ * default) and to the standard output. Run it with 'mvn -pl Desktop -Pbenchmark verify'.
+ */
+public class TurtleControlBenchmark extends SimpleApplication {
+
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000};
+
+    // frames run per scenario, at most.
+    private static final int MAX_FRAMES = 20_000;
+    private static final int DRAWING_FRAMES = 2_000;
+
+    // long enough for a move or a turn to be done in a frame.
+    private static final float TPF = 1f;
+
+    private final int[] sizes;
+    private final List<Result> results = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Throwable failure;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private TurtleControlBenchmark(int[] sizes) {
+        this.sizes = sizes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = Paths.get(args.length > 0 ? args[0] : "target/benchmark/turtle-control.json");
+        String sizesProperty = System.getProperty("benchmark.sizes");
+        int[] sizes = sizesProperty == null || sizesProperty.trim().isEmpty() ? DEFAULT_SIZES
+                : Arrays.stream(sizesProperty.split(",")).mapToInt(size -> Integer.parseInt(size.trim())).toArray();
+
+        // the scenarios log nothing worth their cost.
+        Logger.getLogger("com.jme3").setLevel(Level.WARNING);
+
+        TurtleControlBenchmark benchmark = new TurtleControlBenchmark(sizes);
+        AppSettings settings = new AppSettings(true);
+        settings.setAudioRenderer(null);
+        benchmark.setSettings(settings);
+        benchmark.setShowSettings(false);
+        benchmark.start(JmeContext.Type.Headless);
+        benchmark.done.await();
+        if (benchmark.failure != null) {
+            throw new IllegalStateException("Benchmark failed", benchmark.failure);
+        }
+
+        String json = benchmark.toJson();
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+        System.out.println(json);
+    }
+
+    @Override
+    public void simpleInitApp() {
+    }
+
+    @Override
+    public void simpleUpdate(float tpf) {
+        if (done.getCount() == 0) {
+            return;
+        }
+        try {
+            // not recorded: let the JIT compile the update path first.
+            queuedActions(sizes[0]);
+            for (int size : sizes) {
+                results.add(queuedActions(size));
+                results.add(attachedSegments(size));
+            }
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            done.countDown();
+            stop();
+        }
+    }
+
+    private Result queuedActions(int size) {
+        Node scene = new Node("benchmark");
+        TurtleControl turtleControl = new TurtleControl(assetManager, scene);
+        Result result = new Result("queued-actions", size);
+
+        result.startSetup();
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                turtleControl.forward(1f);
+            } else {
+                turtleControl.turnRight(90f);
+            }
+        }
+        result.endSetup();
+
+        runFrames(scene, Math.min(size, MAX_FRAMES), result, null);
+        result.segments = turtleControl.getDrawing().getSegmentCount();
+        result.queuedAfter = turtleControl.getQueuedActions();
+        turtleControl.getDrawing().clear();
+        return result;
+    }
+
+    private Result attachedSegments(int size) {
+        Node scene = new Node("benchmark");
+        TurtleControl turtleControl = new TurtleControl(assetManager, scene);
+        Drawing drawing = turtleControl.getDrawing();
+        Result result = new Result("attached-segments", size);
+
+        result.startSetup();
+        Vector3f from = new Vector3f();
+        Vector3f to = new Vector3f();
+        for (int i = 0; i < size; i++) {
+            // a zigzag, so no two segments are the same.
+            from.set(to);
+            to.set(i * 0.001f, 0.1f, (i % 2) * 0.5f);
+            drawing.add(from, to);
+        }
+        // the first frame attaches the meshes of every page.
+        scene.updateLogicalState(TPF);
+        scene.updateGeometricState();
+        result.endSetup();
+
+        runFrames(scene, DRAWING_FRAMES, result, () -> turtleControl.forward(1f));
+        result.segments = drawing.getSegmentCount();
+        result.queuedAfter = turtleControl.getQueuedActions();
+        drawing.clear();
+        return result;
+    }
+
+    /**
+     * @param beforeFrame run before each frame, may be null.
+     */
+    private void runFrames(Node scene, int frames, Result result, Runnable beforeFrame) {
+        System.gc();
+        long threadId = Thread.currentThread().getId();
+        long[] logical = new long[frames];
+        long[] geometric = new long[frames];
+        long collections = collectionCount();
+        long collectionMillis = collectionTime();
+        long allocated = allocatedBytes(threadId);
+
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            if (beforeFrame != null) {
+                beforeFrame.run();
+            }
+            long frameStart = System.nanoTime();
+            scene.updateLogicalState(TPF);
+            long logicalEnd = System.nanoTime();
+            scene.updateGeometricState();
+            logical[frame] = logicalEnd - frameStart;
+            geometric[frame] = System.nanoTime() - logicalEnd;
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+
+        result.frames = frames;
+        result.logical = new Stats(logical);
+        result.geometric = new Stats(geometric);
+        result.allocatedBytesPerFrame = allocated < 0 ? -1 : (allocatedBytes(threadId) - allocated) / frames;
+        result.collections = collectionCount() - collections;
+        result.collectionMillis = collectionTime() - collectionMillis;
+        result.heapUsedBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        result.directUsedBytes = directUsedBytes();
+    }
+
+    private long allocatedBytes(long threadId) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+            if (hotSpotThreads.isThreadAllocatedMemorySupported() && hotSpotThreads.isThreadAllocatedMemoryEnabled()) {
+                return hotSpotThreads.getThreadAllocatedBytes(threadId);
+            }
+        }
+        return -1;
+    }
+
+    private long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : garbageCollectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long collectionTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : garbageCollectors) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static long directUsedBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+
+    private String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"benchmark\": \"turtle-control\",\n");
+        json.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"jme\": \"").append(JmeSystem.getFullName()).append("\",\n");
+        json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n");
+        json.append("  \"results\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).appendJson(json);
+            json.append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private class Result {
+        final String scenario;
+        final int size;
+
+        long setupNanos;
+        long setupAllocatedBytes;
+        int frames;
+        long elapsedNanos;
+        Stats logical;
+        Stats geometric;
+        long allocatedBytesPerFrame;
+        long collections;
+        long collectionMillis;
+        long heapUsedBytes;
+        long directUsedBytes;
+        long segments;
+        int queuedAfter;
+
+        private long setupStart;
+
+        Result(String scenario, int size) {
+            this.scenario = scenario;
+            this.size = size;
+        }
+
+        void startSetup() {
+            setupAllocatedBytes = allocatedBytes(Thread.currentThread().getId());
+            setupStart = System.nanoTime();
+        }
+
+        void endSetup() {
+            setupNanos = System.nanoTime() - setupStart;
+            setupAllocatedBytes = setupAllocatedBytes < 0 ? -1
+                    : allocatedBytes(Thread.currentThread().getId()) - setupAllocatedBytes;
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("    {\"scenario\": \"").append(scenario).append("\", \"size\": ").append(size)
+                    .append(", \"setupNanos\": ").append(setupNanos)
+                    .append(", \"setupAllocatedBytes\": ").append(setupAllocatedBytes)
+                    .append(", \"frames\": ").append(frames)
+                    .append(", \"elapsedNanos\": ").append(elapsedNanos)
+                    .append(", \"logicalUpdateNanos\": ");
+            logical.appendJson(json);
+            json.append(", \"geometricUpdateNanos\": ");
+            geometric.appendJson(json);
+            json.append(", \"allocatedBytesPerFrame\": ").append(allocatedBytesPerFrame)
+                    .append(", \"collections\": ").append(collections)
+                    .append(", \"collectionMillis\": ").append(collectionMillis)
+                    .append(", \"heapUsedBytes\": ").append(heapUsedBytes)
+                    .append(", \"directUsedBytes\": ").append(directUsedBytes)
+                    .append(", \"segments\": ").append(segments)
+                    .append(", \"queuedActionsAfter\": ").append(queuedAfter)
+                    .append('}');
+        }
+    }
+
+    /**
+     * Distribution of the durations of frames, in nanoseconds.
+     */
+    private static class Stats {
+        final double mean;
+        final long p50;
+        final long p90;
+        final long p99;
+        final long max;
+
+        Stats(long[] nanos) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            mean = Arrays.stream(sorted).average().orElse(0);
+            p50 = percentile(sorted, 0.50);
+            p90 = percentile(sorted, 0.90);
+            p99 = percentile(sorted, 0.99);
+            max = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append(String.format(Locale.ROOT, "{\"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"max\": %d}",
+                    mean, p50, p90, p99, max));
+        }
+    }
+}
@@ -57,11 +57,14 @@ cmd
     | home
     | label
     | setxy
+    | undo
     | make
     | procedureInvocation
     | ife
     | stop
     | fore
+    | tell
+    | ask
     ;
 
 procedureInvocation
@@ -200,6 +203,10 @@ setxy
     : 'setxy' expression expression
     ;
 
+undo
+    : 'undo' expression?
+    ;
+
 random
     : 'random' expression
     ;
@@ -208,6 +215,19 @@ fore
     : 'for' '[' name expression expression expression ']' block
     ;
 
+tell
+    : 'tell' turtles
+    ;
+
+ask
+    : 'ask' turtles block
+    ;
+
+turtles
+    : number
+    | '[' number+ ']'
+    ;
+
 number
     : NUMBER
     ;
@@ -0,0 +1,197 @@
+package logo3d.language;
+
+/**
+ * Peephole stage between a {@link Program} and the turtle: runs like 'pu fd 1 fd 1 pd' or 'rt 1 lt 2 rt 1' are
+ * merged into a single move or turn before they reach the delegate, without changing the final drawing.
+ *
+ * <ul>
+ * <li>consecutive moves are merged while the pen is up, since nothing is drawn,</li>
+ * <li>consecutive turns are merged, and the net turn is normalized in ]-180, 180],</li>
+ * <li>zero-length moves and net-zero turns are dropped.</li>
+ * </ul>
+ *
+ * Every segment drawn still reaches the delegate, so 'undo' counts them as written. With
+ * {@link #setMergingSegments(boolean)}, consecutive moves in the same direction with the pen down are merged into
+ * one segment too: 'fd 1 fd 1 undo 1' then undoes both moves.
+ *
+ * Pending commands are handed over on any other command, and on {@link #flush()}.
+ */
+public class CoalescingTurtleActions implements TurtleActionCallbacks {
+
+    // below that, accumulated rounding errors are taken for a net-zero turn.
+    private static final float ANGLE_EPSILON = 1e-3f;
+
+    private final TurtleActionCallbacks delegate;
+
+    private boolean penDown = true;
+
+    // off by default, see setMergingSegments.
+    private boolean mergingSegments;
+
+    // pending move: positive forward, negative backward.
+    private float pendingMove;
+    private boolean movePending;
+
+    // pending turn: positive right, negative left.
+    private float pendingTurn;
+    private boolean turnPending;
+
+    public CoalescingTurtleActions(TurtleActionCallbacks delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Merge the segments drawn in a row in the same direction, at the cost of 'undo' counting a merged run as one
+     * segment. Off by default.
+     */
+    public void setMergingSegments(boolean mergingSegments) {
+        flush();
+        this.mergingSegments = mergingSegments;
+    }
+
+    @Override
+    public void forward(float value) {
+        move(value);
+    }
+
+    @Override
+    public void backward(float value) {
+        move(-value);
+    }
+
+    @Override
+    public void turnLeft(float degree) {
+        turn(-degree);
+    }
+
+    @Override
+    public void turnRight(float degree) {
+        turn(degree);
+    }
+
+    @Override
+    public void penUp() {
+        flush();
+        penDown = false;
+        delegate.penUp();
+    }
+
+    @Override
+    public void penDown() {
+        flush();
+        penDown = true;
+        delegate.penDown();
+    }
+
+    @Override
+    public void home() {
+        flush();
+        delegate.home();
+    }
+
+    @Override
+    public void setXY(float x, float y) {
+        flush();
+        delegate.setXY(x, y);
+    }
+
+    @Override
+    public void clearScreen() {
+        flush();
+        delegate.clearScreen();
+    }
+
+    @Override
+    public void undo(int segments) {
+        flush();
+        delegate.undo(segments);
+    }
+
+    @Override
+    public void drawShape(Shape shape) {
+        flush();
+        delegate.drawShape(shape);
+    }
+
+    @Override
+    public void print(String msg) {
+        flush();
+        delegate.print(msg);
+    }
+
+    @Override
+    public void flush() {
+        flushMove();
+        flushTurn();
+        delegate.flush();
+    }
+
+    private void move(float distance) {
+        if (distance == 0f) {
+            return;
+        }
+        if (turnPending) {
+            // a net-zero turn between two moves leaves them collinear.
+            float net = netTurn();
+            turnPending = false;
+            pendingTurn = 0f;
+            if (net != 0f) {
+                flushMove();
+                emitTurn(net);
+            }
+        }
+        // a segment drawn back over itself is not the same drawing as the shorter one.
+        if (movePending && penDown && (!mergingSegments || Math.signum(distance) != Math.signum(pendingMove))) {
+            flushMove();
+        }
+        pendingMove += distance;
+        movePending = true;
+    }
+
+    private void turn(float degree) {
+        // the pending move, if any, stays before the pending turn.
+        pendingTurn += degree;
+        turnPending = true;
+    }
+
+    private void flushMove() {
+        if (movePending) {
+            if (pendingMove > 0f) {
+                delegate.forward(pendingMove);
+            } else if (pendingMove < 0f) {
+                delegate.backward(-pendingMove);
+            }
+            pendingMove = 0f;
+            movePending = false;
+        }
+    }
+
+    private void flushTurn() {
+        if (turnPending) {
+            emitTurn(netTurn());
+            pendingTurn = 0f;
+            turnPending = false;
+        }
+    }
+
+    /**
+     * @return the pending turn in ]-180, 180], or 0 for a net-zero turn.
+     */
+    private float netTurn() {
+        float net = pendingTurn % 360f;
+        if (net > 180f) {
+            net -= 360f;
+        } else if (net <= -180f) {
+            net += 360f;
+        }
+        return Math.abs(net) > ANGLE_EPSILON ? net : 0f;
+    }
+
+    private void emitTurn(float net) {
+        if (net > 0f) {
+            delegate.turnRight(net);
+        } else if (net < 0f) {
+            delegate.turnLeft(-net);
+        }
+    }
+}
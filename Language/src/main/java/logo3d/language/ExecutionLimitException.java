@@ -0,0 +1,11 @@
+package logo3d.language;
+
+/**
+ * Thrown when a program goes beyond one of the limits it runs with: commands, time or drawing size.
+ */
+public class ExecutionLimitException extends RuntimeException {
+
+    public ExecutionLimitException(String message) {
+        super(message);
+    }
+}
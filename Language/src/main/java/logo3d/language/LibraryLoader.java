@@ -0,0 +1,286 @@
+package logo3d.language;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Load a library script, made of many procedure declarations, parsing it in parallel.
+ *
+ * The script is split at its top-level 'to' ... 'end' declarations: each declaration, and each run of commands
+ * between two of them, is parsed on its own by a task of a fork-join pool, with the parser of its worker thread.
+ * Chunks are then linked in script order by the calling thread, as soon as they are parsed: procedures are declared
+ * and commands executed, as if the whole script was interpreted at once. Syntax errors are reported in script order
+ * too, at their line in the script.
+ *
+ * Lazily, only the 'to' line of a declaration is read at load time, and its body is parsed on its first invocation:
+ * the syntax errors of a body are then reported when it is first invoked, still at their line in the script.
+ */
+public class LibraryLoader {
+
+    private static final Logger LOG = getLogger(LibraryLoader.class);
+
+    // 'to' name, then the parameters: ':a :b' or ':a, :b', then maybe a comment.
+    private static final Pattern HEADER = Pattern.compile(
+            "\\s*to\\s+([a-zA-Z][a-zA-Z0-9_]*)((?:\\s*,?\\s*:\\s*[a-zA-Z][a-zA-Z0-9_]*)*)\\s*(?:;.*)?");
+    private static final Pattern PARAMETER = Pattern.compile(":\\s*([a-zA-Z][a-zA-Z0-9_]*)");
+
+    // keywords of the language cannot be procedure names.
+    private static final Set<String> KEYWORDS = keywords();
+
+    private final Program program;
+    private final ForkJoinPool pool;
+    private boolean lazy;
+
+    public LibraryLoader(Program program) {
+        this(program, ForkJoinPool.commonPool());
+    }
+
+    public LibraryLoader(Program program, ForkJoinPool pool) {
+        this.program = program;
+        this.pool = pool;
+    }
+
+    /**
+     * Parse procedure bodies on their first invocation rather than at load time.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Load a whole script file, encoded in UTF-8.
+     *
+     * @return the number of procedures declared.
+     */
+    public int load(Path path) throws IOException {
+        return load(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Load a whole script, in the calling thread but for parsing.
+     *
+     * @return the number of procedures declared.
+     */
+    public int load(String script) {
+        long start = System.nanoTime();
+        List<Chunk> chunks = split(script);
+        List<ForkJoinTask<Chunk>> parsing = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            parsing.add(lazy && chunk.declareLazily() ? null : pool.submit(chunk::parse));
+        }
+
+        int procedures = 0;
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                Chunk chunk = parsing.get(i) == null ? chunks.get(i) : parsing.get(i).join();
+                if (chunk.link()) {
+                    procedures++;
+                }
+            }
+        } finally {
+            // an error while executing: nothing more to parse.
+            for (ForkJoinTask<Chunk> task : parsing) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
+        }
+        LOG.info("{} procedures in {} chunks loaded in {} ms", procedures, chunks.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return procedures;
+    }
+
+    /**
+     * Split a script in declarations, and runs of commands between them. Blank runs are left out.
+     */
+    List<Chunk> split(String script) {
+        List<Chunk> chunks = new ArrayList<>();
+        int chunkStart = 0;
+        int chunkLine = 1;
+        int procedureDepth = 0;
+        int lineStart = 0;
+        int line = 1;
+        while (lineStart < script.length()) {
+            int newline = script.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? script.length() : newline + 1;
+            if (startsWith(script, lineStart, lineEnd, "to")) {
+                if (procedureDepth == 0) {
+                    addCommands(chunks, script.substring(chunkStart, lineStart), chunkLine);
+                    chunkStart = lineStart;
+                    chunkLine = line;
+                }
+                procedureDepth++;
+            } else if (procedureDepth > 0 && startsWith(script, lineStart, lineEnd, "end")) {
+                procedureDepth--;
+                if (procedureDepth == 0) {
+                    chunks.add(new Chunk(true, script.substring(chunkStart, lineEnd), chunkLine));
+                    chunkStart = lineEnd;
+                    chunkLine = line + 1;
+                }
+            }
+            lineStart = lineEnd;
+            line++;
+        }
+        if (procedureDepth > 0) {
+            // unterminated: let the parser report it.
+            chunks.add(new Chunk(true, script.substring(chunkStart), chunkLine));
+        } else {
+            addCommands(chunks, script.substring(chunkStart), chunkLine);
+        }
+        return chunks;
+    }
+
+    private void addCommands(List<Chunk> chunks, String commands, int firstLine) {
+        if (!commands.trim().isEmpty()) {
+            chunks.add(new Chunk(false, commands, firstLine));
+        }
+    }
+
+    /**
+     * Whether the line starts with the given keyword, ignoring leading blanks.
+     */
+    private static boolean startsWith(String script, int from, int to, String keyword) {
+        int i = from;
+        while (i < to && (script.charAt(i) == ' ' || script.charAt(i) == '\t')) {
+            i++;
+        }
+        if (!script.startsWith(keyword, i) || i + keyword.length() > to) {
+            return false;
+        }
+        // the keyword must be a whole word.
+        int next = i + keyword.length();
+        return next == to || Character.isWhitespace(script.charAt(next));
+    }
+
+    private static LogoParser.ProcedureDeclarationContext declaration(LogoParser.ProgContext prog) {
+        for (LogoParser.LineContext line : prog.line()) {
+            if (line.procedureDeclaration() != null) {
+                return line.procedureDeclaration();
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> keywords() {
+        Set<String> keywords = new HashSet<>();
+        for (int type = 0; type <= LogoLexer._ATN.maxTokenType; type++) {
+            String literal = LogoLexer.VOCABULARY.getLiteralName(type);
+            if (literal != null) {
+                // quoted, as in the grammar.
+                keywords.add(literal.substring(1, literal.length() - 1));
+            }
+        }
+        return keywords;
+    }
+
+    /**
+     * A declaration or a run of commands, parsed by a worker then linked by the loading thread.
+     */
+    class Chunk {
+        final boolean procedure;
+        final String source;
+        final int firstLine;
+
+        // filled by parse, or declareLazily.
+        private LogoParser.ProgContext prog;
+        private final List<SyntaxError> syntaxErrors = new ArrayList<>();
+        private Procedure lazyProcedure;
+
+        Chunk(boolean procedure, String source, int firstLine) {
+            this.procedure = procedure;
+            this.source = source;
+            this.firstLine = firstLine;
+        }
+
+        Chunk parse() {
+            prog = Program.parse(source, firstLine, new Program.SyntaxErrorHandler() {
+                @Override
+                public void onSyntaxError(String msg) {
+                    onSyntaxError(0, 0, msg);
+                }
+
+                @Override
+                public void onSyntaxError(int line, int column, String msg) {
+                    syntaxErrors.add(new SyntaxError(line, column, msg));
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Read the name and parameters of a declaration from its 'to' line, leaving the body for later.
+         *
+         * @return false if it is not a declaration, or its 'to' line is not a plain one: it must be parsed now.
+         */
+        boolean declareLazily() {
+            if (!procedure) {
+                return false;
+            }
+            int newline = source.indexOf('\n');
+            String header = newline < 0 ? source : source.substring(0, newline);
+            Matcher matcher = HEADER.matcher(header);
+            if (!matcher.matches() || KEYWORDS.contains(matcher.group(1))) {
+                return false;
+            }
+            List<String> parameters = new ArrayList<>();
+            Matcher parameter = PARAMETER.matcher(matcher.group(2));
+            while (parameter.find()) {
+                parameters.add(parameter.group(1));
+            }
+            lazyProcedure = new Procedure(matcher.group(1), parameters, firstLine - 1,
+                    () -> declaration(Program.parse(source, firstLine, program.getSyntaxErrorHandler())));
+            return true;
+        }
+
+        /**
+         * @return whether a procedure was declared.
+         */
+        boolean link() {
+            if (lazyProcedure != null) {
+                program.declare(lazyProcedure);
+                return true;
+            }
+            Program.SyntaxErrorHandler syntaxErrorHandler = program.getSyntaxErrorHandler();
+            for (SyntaxError error : syntaxErrors) {
+                syntaxErrorHandler.onSyntaxError(error.line, error.column, error.msg);
+            }
+            if (!procedure) {
+                program.execute(prog, firstLine);
+                return false;
+            }
+            LogoParser.ProcedureDeclarationContext declaration = declaration(prog);
+            if (declaration == null) {
+                return false;
+            }
+            program.declare(new Procedure(declaration, firstLine - 1));
+            return true;
+        }
+    }
+
+    private static class SyntaxError {
+        final int line;
+        final int column;
+        final String msg;
+
+        SyntaxError(int line, int column, String msg) {
+            this.line = line;
+            this.column = column;
+            this.msg = msg;
+        }
+    }
+}
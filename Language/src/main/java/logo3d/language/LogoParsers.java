@@ -0,0 +1,183 @@
+package logo3d.language;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.BufferedTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Lexer and parser instances reused per thread.
+ *
+ * Creating a {@link LogoLexer} and a {@link LogoParser} for every command is wasted work: each thread keeps its own
+ * pair and resets it with the new input. The ATN/DFA cache is static in the generated recognizers, so it is shared by
+ * every thread and every {@link Program}; {@link #warmUp()} fills it before the first real command.
+ *
+ * Threads that live for a single task, like one virtual thread per request, would create a pair each time: they
+ * share a bounded {@link #pool(int)} instead.
+ */
+public final class LogoParsers {
+
+    private static final Logger LOG = getLogger(LogoParsers.class);
+
+    private static final String WARM_UP_CORPUS = "warmup.logo";
+
+    private static final ThreadLocal<LogoParsers> PARSERS = ThreadLocal.withInitial(LogoParsers::new);
+
+    private final LogoLexer lexer = new LogoLexer(null);
+    private final LogoParser parser = new LogoParser(null);
+
+    /**
+     * Parses with the parser of the calling thread.
+     */
+    public static final Source PER_THREAD = LogoParsers::parse;
+
+    private LogoParsers() {
+    }
+
+    /**
+     * Parse a whole program with the parser of the calling thread.
+     */
+    public static LogoParser.ProgContext parse(String sourceCode, ANTLRErrorListener errorListener) {
+        return PARSERS.get().doParse(sourceCode, errorListener);
+    }
+
+    /**
+     * @param size number of parsers at most, created when first needed; beyond that, threads wait for one.
+     * @return parsers shared by any number of threads.
+     */
+    public static Source pool(int size) {
+        return new Pool(size);
+    }
+
+    /**
+     * Where a {@link Program} takes its parser from.
+     */
+    public interface Source {
+        LogoParser.ProgContext parse(String sourceCode, ANTLRErrorListener errorListener);
+    }
+
+    static final class Pool implements Source {
+        private final int size;
+        private final BlockingQueue<LogoParsers> idle;
+        private final AtomicInteger created = new AtomicInteger();
+
+        private Pool(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("size must be positive: " + size);
+            }
+            this.size = size;
+            this.idle = new ArrayBlockingQueue<>(size);
+        }
+
+        @Override
+        public LogoParser.ProgContext parse(String sourceCode, ANTLRErrorListener errorListener) {
+            LogoParsers parsers = borrow();
+            try {
+                return parsers.doParse(sourceCode, errorListener);
+            } finally {
+                idle.offer(parsers);
+            }
+        }
+
+        int getCreated() {
+            return created.get();
+        }
+
+        private LogoParsers borrow() {
+            LogoParsers parsers = idle.poll();
+            if (parsers != null) {
+                return parsers;
+            }
+            if (created.incrementAndGet() <= size) {
+                return new LogoParsers();
+            }
+            created.decrementAndGet();
+            try {
+                // a blocking queue waits on a lock, not a monitor: a virtual thread does not pin its carrier.
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionLimitException("Program was interrupted");
+            }
+        }
+    }
+
+    /**
+     * Parse a representative corpus, so the shared DFA cache is warm before the first command.
+     * Run it in the background at application start: it also creates the parser of the calling thread.
+     */
+    public static void warmUp() {
+        long start = System.nanoTime();
+        try {
+            parse(warmUpCorpus(), new BaseErrorListener() {
+                @Override
+                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                    LOG.warn("Syntax error in warm up corpus at {}:{}: {}", line, charPositionInLine, msg);
+                }
+            });
+            LOG.info("Parser warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            LOG.warn("Unable to warm up the parser", e);
+        }
+    }
+
+    /**
+     * @return the source code parsed by {@link #warmUp()}.
+     */
+    static String warmUpCorpus() throws IOException {
+        try (InputStream corpus = LogoParsers.class.getResourceAsStream(WARM_UP_CORPUS)) {
+            return new String(readFully(corpus), StandardCharsets.UTF_8);
+        }
+    }
+
+    static LogoParser parser() {
+        return PARSERS.get().parser;
+    }
+
+    private LogoParser.ProgContext doParse(String sourceCode, ANTLRErrorListener errorListener) {
+        lexer.setInputStream(new ANTLRInputStream(sourceCode));
+        // the token stream itself is cheap, and it cannot be reset in this ANTLR version (EOF stays fetched).
+        parser.setTokenStream(new BufferedTokenStream(lexer));
+
+        // deal with errors.
+        parser.removeErrorListeners();
+        parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+        parser.addErrorListener(errorListener);
+
+        try {
+            return parser.prog();
+        } finally {
+            // do not keep the last program alive.
+            parser.setTokenStream(null);
+            lexer.setInputStream(null);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IOException("Missing resource " + WARM_UP_CORPUS);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
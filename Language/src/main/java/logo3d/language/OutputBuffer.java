@@ -0,0 +1,151 @@
+package logo3d.language;
+
+/**
+ * Bounded ring buffer of the lines a program outputs, printed lines and errors, between the threads writing them
+ * and a user interface showing them a batch at a time, typically once per frame.
+ *
+ * Lines repeated in a row take a single entry, with the number of repeats, unless lines were dropped in between.
+ * When the buffer is full, new lines are either dropped and counted, or their writer waits for the next drain: a
+ * loop printing thousands of lines per second costs its writer a lock per line, and the user interface a batch per
+ * frame, whatever the rate.
+ * Any thread can write; only one thread drains.
+ */
+public class OutputBuffer {
+
+    public enum Overflow {
+        /** new lines are dropped, and counted. */
+        DROP,
+        /** writers wait for the next drain. */
+        BLOCK
+    }
+
+    /**
+     * Receives the lines drained, oldest first.
+     */
+    public interface Sink {
+        /**
+         * @param repeats number of times the line was written in a row, at least 1.
+         */
+        void line(String text, boolean error, int repeats);
+
+        /**
+         * Called once after the lines if some were dropped since the previous drain.
+         */
+        void dropped(long lines);
+    }
+
+    private final Overflow overflow;
+
+    // the ring, guarded by this.
+    private final String[] texts;
+    private final boolean[] errors;
+    private final int[] repeats;
+    private int head;
+    private int size;
+    private long dropped;
+    private long totalDropped;
+    // lines were dropped after the last entry: a repeat of it is not in a row anymore.
+    private boolean droppedSinceLast;
+
+    // copy of the ring handed to the sink out of the lock, only used by the draining thread.
+    private final String[] drainedTexts;
+    private final boolean[] drainedErrors;
+    private final int[] drainedRepeats;
+
+    public OutputBuffer(int capacity, Overflow overflow) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.overflow = overflow;
+        this.texts = new String[capacity];
+        this.errors = new boolean[capacity];
+        this.repeats = new int[capacity];
+        this.drainedTexts = new String[capacity];
+        this.drainedErrors = new boolean[capacity];
+        this.drainedRepeats = new int[capacity];
+    }
+
+    public void print(String text) {
+        add(text, false);
+    }
+
+    public void error(String text) {
+        add(text, true);
+    }
+
+    /**
+     * @return the number of lines dropped since this buffer was created.
+     */
+    public synchronized long getDroppedLines() {
+        return totalDropped;
+    }
+
+    /**
+     * Hand all the buffered lines over to the sink, then make room for new ones. Only called by one thread.
+     *
+     * @return the number of entries handed over, repeated lines counting as one.
+     */
+    public int drain(Sink sink) {
+        int drained;
+        long droppedLines;
+        synchronized (this) {
+            drained = size;
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) % texts.length;
+                drainedTexts[i] = texts[slot];
+                drainedErrors[i] = errors[slot];
+                drainedRepeats[i] = repeats[slot];
+                texts[slot] = null;
+            }
+            head = 0;
+            size = 0;
+            droppedSinceLast = false;
+            droppedLines = dropped;
+            dropped = 0;
+            if (overflow == Overflow.BLOCK) {
+                notifyAll();
+            }
+        }
+        for (int i = 0; i < drained; i++) {
+            sink.line(drainedTexts[i], drainedErrors[i], drainedRepeats[i]);
+            drainedTexts[i] = null;
+        }
+        if (droppedLines > 0) {
+            sink.dropped(droppedLines);
+        }
+        return drained;
+    }
+
+    private synchronized void add(String text, boolean error) {
+        if (size > 0 && !droppedSinceLast) {
+            int last = (head + size - 1) % texts.length;
+            if (errors[last] == error && texts[last].equals(text) && repeats[last] < Integer.MAX_VALUE) {
+                repeats[last]++;
+                return;
+            }
+        }
+        while (size == texts.length) {
+            if (overflow == Overflow.DROP) {
+                dropped++;
+                totalDropped++;
+                droppedSinceLast = true;
+                return;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // whoever interrupted the writer will see it, the line is lost.
+                Thread.currentThread().interrupt();
+                dropped++;
+                totalDropped++;
+                droppedSinceLast = true;
+                return;
+            }
+        }
+        int slot = (head + size) % texts.length;
+        texts[slot] = text;
+        errors[slot] = error;
+        repeats[slot] = 1;
+        size++;
+    }
+}
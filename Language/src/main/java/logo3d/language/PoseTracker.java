@@ -0,0 +1,133 @@
+package logo3d.language;
+
+/**
+ * Hands the moves and turns over to another turtle, keeping track of where the turtle stands relative to where it
+ * was when tracking started.
+ *
+ * Follows the conventions of the turtles: it starts at the origin heading to -Z, draws on the XZ plane, and turns
+ * right clockwise when seen from above. Any other command loses track of the turtle.
+ */
+class PoseTracker implements TurtleActionCallbacks {
+
+    // the pose is back at start if the error, once repeated over the periods skipped, stays within that distance
+    // and that angle.
+    private static final double DISTANCE_TOLERANCE = 1e-6;
+    private static final double ANGLE_TOLERANCE = 1e-6;
+
+    private final TurtleActionCallbacks delegate;
+
+    private double x;
+    private double z;
+    // degrees, positive to the left, in [0, 360[.
+    private double heading;
+    private boolean lost;
+
+    PoseTracker(TurtleActionCallbacks delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param periods the number of times the moves tracked so far would be repeated instead of run: the distance
+     *                and angle from the start add up over the periods.
+     * @return whether the turtle stands where it started, with the same heading.
+     */
+    boolean isBackAtStart(long periods) {
+        double repeats = Math.max(1L, periods);
+        return !lost
+                && Math.max(Math.abs(x), Math.abs(z)) * repeats <= DISTANCE_TOLERANCE
+                && Math.min(heading, 360.0 - heading) * repeats <= ANGLE_TOLERANCE;
+    }
+
+    @Override
+    public void forward(float value) {
+        move(0.0, -value);
+        delegate.forward(value);
+    }
+
+    @Override
+    public void backward(float value) {
+        move(0.0, value);
+        delegate.backward(value);
+    }
+
+    @Override
+    public void turnLeft(float degree) {
+        turn(degree);
+        delegate.turnLeft(degree);
+    }
+
+    @Override
+    public void turnRight(float degree) {
+        turn(-degree);
+        delegate.turnRight(degree);
+    }
+
+    @Override
+    public void drawShape(Shape shape) {
+        move(shape.getEndX(), shape.getEndZ());
+        turn(shape.getEndHeading());
+        delegate.drawShape(shape);
+    }
+
+    @Override
+    public void penUp() {
+        lost = true;
+        delegate.penUp();
+    }
+
+    @Override
+    public void penDown() {
+        lost = true;
+        delegate.penDown();
+    }
+
+    @Override
+    public void home() {
+        lost = true;
+        delegate.home();
+    }
+
+    @Override
+    public void setXY(float x, float y) {
+        lost = true;
+        delegate.setXY(x, y);
+    }
+
+    @Override
+    public void clearScreen() {
+        lost = true;
+        delegate.clearScreen();
+    }
+
+    @Override
+    public void undo(int segments) {
+        lost = true;
+        delegate.undo(segments);
+    }
+
+    @Override
+    public void print(String msg) {
+        delegate.print(msg);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    /**
+     * Move by a displacement given as if the turtle was heading to -Z.
+     */
+    private void move(double localX, double localZ) {
+        double radians = Math.toRadians(heading);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        x += cos * localX + sin * localZ;
+        z += -sin * localX + cos * localZ;
+    }
+
+    private void turn(double degree) {
+        double normalized = (heading + degree) % 360.0;
+        heading = normalized < 0.0 ? normalized + 360.0 : normalized;
+    }
+}
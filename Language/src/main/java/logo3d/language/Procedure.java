@@ -0,0 +1,239 @@
+package logo3d.language;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.RuleNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A procedure declared with 'to ... end': its parameters and the lines of its body.
+ *
+ * The body can be compiled lazily, on first use: only the name and the parameters are needed to declare it.
+ */
+class Procedure {
+
+    final String name;
+    final List<String> parameters = new ArrayList<>();
+    // added to the lines of the body, parsed on their own, to give their lines in the whole script.
+    final int lineOffset;
+
+    // null until compiled.
+    private List<LogoParser.LineContext> body;
+    private Supplier<LogoParser.ProcedureDeclarationContext> compiler;
+
+    Procedure(LogoParser.ProcedureDeclarationContext declaration, int lineOffset) {
+        this.name = declaration.name().getText();
+        this.lineOffset = lineOffset;
+        for (LogoParser.ParameterDeclarationsContext parameter : declaration.parameterDeclarations()) {
+            addParameters(parameter);
+        }
+        this.body = declaration.line();
+    }
+
+    /**
+     * @param compiler parses the whole declaration, or returns null if it has syntax errors.
+     */
+    Procedure(String name, List<String> parameters, int lineOffset,
+              Supplier<LogoParser.ProcedureDeclarationContext> compiler) {
+        this.name = name;
+        this.parameters.addAll(parameters);
+        this.lineOffset = lineOffset;
+        this.compiler = compiler;
+    }
+
+    /**
+     * @return the lines of the body, compiled on the first call for a lazy procedure. Only called by the
+     * interpreting thread.
+     */
+    List<LogoParser.LineContext> body() {
+        if (body == null) {
+            LogoParser.ProcedureDeclarationContext declaration = compiler.get();
+            body = declaration == null ? Collections.emptyList() : declaration.line();
+            compiler = null;
+        }
+        return body;
+    }
+
+    private void addParameters(LogoParser.ParameterDeclarationsContext declaration) {
+        parameters.add(declaration.name().getText());
+        for (LogoParser.ParameterDeclarationsContext next : declaration.parameterDeclarations()) {
+            addParameters(next);
+        }
+    }
+
+    /**
+     * A procedure only moves the turtle if its body is made of moves, turns and loops of them, or invocations of
+     * such procedures, and only reads its own parameters: then an invocation always draws the same shape for the
+     * same arguments, relative to where the turtle stands.
+     */
+    boolean onlyMoves(Map<String, Procedure> procedures) {
+        return onlyMoves(procedures, new HashSet<>());
+    }
+
+    /**
+     * Whether a part of a program only moves the turtle, as a procedure body would, reading any variable but the
+     * given one: then the variables it reads cannot change while it runs.
+     *
+     * @param unread the variable it must not read, or null.
+     */
+    static boolean onlyMoves(ParseTree tree, Map<String, Procedure> procedures, String unread) {
+        return new MotionCheck(procedures, new HashSet<>(), name -> !name.equals(unread)).visit(tree);
+    }
+
+    private boolean onlyMoves(Map<String, Procedure> procedures, Set<String> invoking) {
+        if (!invoking.add(name)) {
+            // recursive: there is no shape to record.
+            return false;
+        }
+        MotionCheck check = new MotionCheck(procedures, invoking, parameters::contains);
+        for (LogoParser.LineContext line : body()) {
+            if (!check.visit(line)) {
+                return false;
+            }
+        }
+        invoking.remove(name);
+        return true;
+    }
+
+    private static class MotionCheck extends LogoBaseVisitor<Boolean> {
+
+        private final Map<String, Procedure> procedures;
+        private final Set<String> invoking;
+        private final Predicate<String> readable;
+
+        MotionCheck(Map<String, Procedure> procedures, Set<String> invoking, Predicate<String> readable) {
+            this.procedures = procedures;
+            this.invoking = invoking;
+            this.readable = readable;
+        }
+
+        @Override
+        protected Boolean defaultResult() {
+            return true;
+        }
+
+        @Override
+        protected Boolean aggregateResult(Boolean aggregate, Boolean nextResult) {
+            return aggregate && nextResult;
+        }
+
+        @Override
+        protected boolean shouldVisitNextChild(RuleNode node, Boolean currentResult) {
+            return currentResult;
+        }
+
+        @Override
+        public Boolean visitTerminal(TerminalNode node) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitDeref(LogoParser.DerefContext ctx) {
+            return readable.test(ctx.name().getText());
+        }
+
+        @Override
+        public Boolean visitProcedureInvocation(LogoParser.ProcedureInvocationContext ctx) {
+            Procedure callee = procedures.get(ctx.name().getText());
+            return callee != null && visitChildren(ctx) && callee.onlyMoves(procedures, invoking);
+        }
+
+        @Override
+        public Boolean visitPrint(LogoParser.PrintContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitProcedureDeclaration(LogoParser.ProcedureDeclarationContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitCs(LogoParser.CsContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitPu(LogoParser.PuContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitPd(LogoParser.PdContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitHt(LogoParser.HtContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitSt(LogoParser.StContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitHome(LogoParser.HomeContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitLabel(LogoParser.LabelContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitSetxy(LogoParser.SetxyContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitUndo(LogoParser.UndoContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitMake(LogoParser.MakeContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitIfe(LogoParser.IfeContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitStop(LogoParser.StopContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitFore(LogoParser.ForeContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitTell(LogoParser.TellContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitAsk(LogoParser.AskContext ctx) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitRandom(LogoParser.RandomContext ctx) {
+            return false;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package logo3d.language;
 
+import logo3d.language.jfr.ExecuteEvent;
+import logo3d.language.jfr.LoopEvent;
+import logo3d.language.jfr.ParseEvent;
+import logo3d.language.jfr.ProcedureCallEvent;
 import org.antlr.v4.runtime.*;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang3.math.NumberUtils.createFloat;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -20,14 +30,67 @@ public class Program {
 
     private static final Logger LOG = getLogger(Program.class);
 
+    // beyond that, the least recently drawn shapes are recorded again when needed.
+    private static final int MAX_SHAPES = 1024;
+
+    // loops are only looked for a period over their first iterations.
+    private static final int MAX_PERIOD = 4096;
+
     private final SyntaxErrorHandler syntaxErrorHandler;
-    private final TurtleActionCallbacks turtleActionCallbacks;
+
+    // the turtles told something so far, by number; turtle 0 is the one given to the constructor.
+    private final Map<Integer, TurtleActionCallbacks> turtles = new TreeMap<>();
+    // none by default, see setTurtleProvider.
+    private TurtleProvider turtleProvider;
+    // where the turtles told together draw, each one by a single task at a time.
+    private final ForkJoinPool turtlePool = ForkJoinPool.commonPool();
+
+    // the turtles told the commands, see 'tell'.
+    private int[] told = {0};
 
     private final LogoRuntime runtime;
 
     // store variables (there's only one global scope!)
     Map<String, LogoValue> memory = new HashMap<>();
 
+    private final Map<String, Procedure> procedures = new HashMap<>();
+
+    // whether each procedure only moves the turtle, see Procedure.onlyMoves.
+    private final Map<String, Boolean> motionOnly = new HashMap<>();
+
+    // shapes drawn by motion-only procedures, by procedure name and arguments.
+    private final Map<String, Shape> shapes = new LinkedHashMap<String, Shape>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Shape> eldest) {
+            return size() > MAX_SHAPES;
+        }
+    };
+
+    // only written by the interpreting thread, may be read by any thread.
+    private volatile long executedCommands;
+
+    // limits of a single interpret call, none by default.
+    private long commandLimit = Long.MAX_VALUE;
+    private long timeLimitNanos = Long.MAX_VALUE;
+
+    // limits of the running interpret call.
+    private long lastAllowedCommand;
+    private long deadline;
+
+    // off by default, see setSkippingPeriods.
+    private boolean skippingPeriods;
+
+    // whether each loop body only moves the turtle, see Procedure.onlyMoves.
+    private final Map<ParserRuleContext, Boolean> motionOnlyLoops = new WeakHashMap<>();
+
+    // none by default.
+    private LogoProfiler profiler;
+
+    // line of the script interpreted, for the source line 1.
+    private int lineOffset;
+
+    private LogoParsers.Source parsers = LogoParsers.PER_THREAD;
+
     private void inc(String var, float step){
         LogoValue logoValue = memory.get(var);
         if (logoValue != null) {
@@ -42,7 +105,7 @@ public class Program {
     }
 
     public Program(TurtleActionCallbacks turtleActionCallbacks, SyntaxErrorHandler syntaxErrorHandler) {
-        this.turtleActionCallbacks = turtleActionCallbacks;
+        this.turtles.put(0, turtleActionCallbacks);
         this.syntaxErrorHandler = syntaxErrorHandler;
         this.runtime = new LogoRuntime();
     }
@@ -54,27 +117,115 @@ public class Program {
     }
 
     public void interpret(String sourceCode) {
+        interpret(sourceCode, 1);
+    }
+
+    /**
+     * Interpret a part of a larger script.
+     *
+     * @param firstLine line of the script where the source code starts, for the positions reported.
+     */
+    public void interpret(String sourceCode, int firstLine) {
+        execute(parse(sourceCode, firstLine, syntaxErrorHandler, parsers), firstLine);
+    }
+
+    /**
+     * Parse a part of a larger script, with the parser of the calling thread: any thread can parse at any time.
+     *
+     * @param firstLine line of the script where the source code starts, for the syntax errors reported.
+     */
+    static LogoParser.ProgContext parse(String sourceCode, int firstLine, SyntaxErrorHandler syntaxErrorHandler) {
+        return parse(sourceCode, firstLine, syntaxErrorHandler, LogoParsers.PER_THREAD);
+    }
+
+    private static LogoParser.ProgContext parse(String sourceCode, int firstLine, SyntaxErrorHandler syntaxErrorHandler,
+                                                LogoParsers.Source parsers) {
         // append EOL to finish the command
         String consoleInput = sourceCode + "\n";
-        // parse the commande line:
-        BufferedTokenStream tokenStream = new BufferedTokenStream(new LogoLexer(new ANTLRInputStream(consoleInput)));
-        LogoParser logoParser = new LogoParser(tokenStream);
-
-        // deal with errors.
-        logoParser.addErrorListener(new BaseErrorListener() {
+        // parse the commande line, dealing with errors.
+        ParseEvent parseEvent = new ParseEvent();
+        parseEvent.begin();
+        int[] syntaxErrors = new int[1];
+        LogoParser.ProgContext prog = parsers.parse(consoleInput, new BaseErrorListener() {
             @Override
             public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-                syntaxErrorHandler.onSyntaxError(msg);
+                syntaxErrors[0]++;
+                syntaxErrorHandler.onSyntaxError(line + firstLine - 1, charPositionInLine + 1, msg);
             }
         });
+        if (parseEvent.shouldCommit()) {
+            parseEvent.characters = sourceCode.length();
+            parseEvent.firstLine = firstLine;
+            parseEvent.syntaxErrors = syntaxErrors[0];
+            parseEvent.commit();
+        }
+        return prog;
+    }
 
-        LogoParser.ProgContext prog = logoParser.prog();
+    /**
+     * Execute a part of a larger script, parsed by {@link #parse(String, int, SyntaxErrorHandler)}.
+     */
+    void execute(LogoParser.ProgContext prog, int firstLine) {
+        lineOffset = firstLine - 1;
         ValueVisitor progVisitor = new ValueVisitor();
-        progVisitor.visit(prog);
+        lastAllowedCommand = commandLimit == Long.MAX_VALUE ? Long.MAX_VALUE : executedCommands + commandLimit;
+        deadline = timeLimitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeLimitNanos;
+        if (profiler != null) {
+            profiler.enterProgram();
+        }
+        ExecuteEvent executeEvent = new ExecuteEvent();
+        executeEvent.begin();
+        long firstCommand = executedCommands;
+        boolean failed = true;
+        try {
+            progVisitor.visit(prog);
+            failed = false;
+        } finally {
+            // the turtles told before were flushed when told no more.
+            progVisitor.turtle.flush();
+            if (profiler != null) {
+                profiler.exitProgram();
+            }
+            if (executeEvent.shouldCommit()) {
+                executeEvent.firstLine = firstLine;
+                executeEvent.commands = executedCommands - firstCommand;
+                executeEvent.failed = failed;
+                executeEvent.commit();
+            }
+        }
     }
 
     class ValueVisitor extends LogoBaseVisitor<LogoValue> {
 
+        // the turtles told the commands, or the recorder of a shape while recording it.
+        private TurtleActionCallbacks turtle = select(told);
+
+        @Override
+        public LogoValue visitCmd(LogoParser.CmdContext ctx) {
+            executedCommands++;
+            checkLimits();
+            if (profiler != null) {
+                profiler.at(ctx.start.getLine() + lineOffset, ctx.start.getCharPositionInLine() + 1);
+            }
+            return visitChildren(ctx);
+        }
+
+        private void checkLimits() {
+            if (executedCommands > lastAllowedCommand) {
+                throw new ExecutionLimitException("Program is limited to " + commandLimit + " commands");
+            }
+            // reading the clock is not free, check every few commands only.
+            if ((executedCommands & 0xFF) == 0) {
+                if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                    throw new ExecutionLimitException("Program is limited to "
+                            + TimeUnit.NANOSECONDS.toMillis(timeLimitNanos) + " ms");
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new ExecutionLimitException("Program was interrupted");
+                }
+            }
+        }
+
         @Override
         public LogoValue visitSignExpression(LogoParser.SignExpressionContext ctx) {
             // this is quite bad :(
@@ -116,9 +267,9 @@ public class Program {
         public LogoValue visitFd(LogoParser.FdContext ctx) {
             LogoValue value = this.visit(ctx.expression());
             if (value.asFloat() < 0f) {
-                turtleActionCallbacks.backward(-value.asFloat());
+                turtle.backward(-value.asFloat());
             } else {
-                turtleActionCallbacks.forward(value.asFloat());
+                turtle.forward(value.asFloat());
             }
             return LogoValue.VOID;
         }
@@ -127,22 +278,62 @@ public class Program {
         public LogoValue visitBk(LogoParser.BkContext ctx) {
             LogoValue value = this.visit(ctx.expression());
             if (value.asFloat() < 0f) {
-                turtleActionCallbacks.forward(-value.asFloat());
+                turtle.forward(-value.asFloat());
             } else {
-                turtleActionCallbacks.backward(value.asFloat());
+                turtle.backward(value.asFloat());
             }
             return LogoValue.VOID;
         }
 
         @Override
         public LogoValue visitRt(LogoParser.RtContext ctx) {
-            turtleActionCallbacks.turnRight(this.visit(ctx.expression()).asFloat());
+            turtle.turnRight(this.visit(ctx.expression()).asFloat());
             return LogoValue.VOID;
         }
 
         @Override
         public LogoValue visitLt(LogoParser.LtContext ctx) {
-            turtleActionCallbacks.turnLeft(this.visit(ctx.expression()).asFloat());
+            turtle.turnLeft(this.visit(ctx.expression()).asFloat());
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitCs(LogoParser.CsContext ctx) {
+            turtle.clearScreen();
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitPu(LogoParser.PuContext ctx) {
+            turtle.penUp();
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitPd(LogoParser.PdContext ctx) {
+            turtle.penDown();
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitHome(LogoParser.HomeContext ctx) {
+            turtle.home();
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitSetxy(LogoParser.SetxyContext ctx) {
+            turtle.setXY(this.visit(ctx.expression(0)).asFloat(), this.visit(ctx.expression(1)).asFloat());
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitUndo(LogoParser.UndoContext ctx) {
+            // undo the last segment by default.
+            int segments = ctx.expression() != null ? this.visit(ctx.expression()).asFloat().intValue() : 1;
+            if (segments > 0) {
+                turtle.undo(segments);
+            }
             return LogoValue.VOID;
         }
 
@@ -150,9 +341,9 @@ public class Program {
         public LogoValue visitPrint(LogoParser.PrintContext ctx) {
 
             if (ctx.quotedstring() != null) {
-                turtleActionCallbacks.print(this.visit(ctx.quotedstring()).asString());
+                turtle.print(this.visit(ctx.quotedstring()).asString());
             } else if (ctx.value() != null) {
-                turtleActionCallbacks.print(this.visit(ctx.value()).asString());
+                turtle.print(this.visit(ctx.value()).asString());
             }
             return LogoValue.VOID;
         }
@@ -220,23 +411,402 @@ public class Program {
             Float lastIndex = this.visit(ctx.expression(1)).asFloat();
             Float step = this.visit(ctx.expression(2)).asFloat();
 
-            for (float i = startIndex; i <= lastIndex; i += step) {
+            LoopEvent event = new LoopEvent();
+            event.begin();
+            long firstCommand = executedCommands;
+            long iterations = 0;
+            long skipped = 0;
+            boolean done = false;
+            if (skipsPeriods(ctx.block(), controlLoopValueName)) {
+                // the counter is not read by the body: count the iterations, then run them at once.
+                float last = startIndex;
+                boolean endless = false;
+                for (float i = startIndex; i <= lastIndex && !endless; i += step) {
+                    endless = i + step == i;
+                    last = i;
+                    iterations++;
+                }
+                if (!endless) {
+                    if (iterations > 0) {
+                        set(controlLoopValueName, last);
+                        skipped = iterate(ctx.block(), iterations);
+                    }
+                    done = true;
+                } else {
+                    // left to the limits.
+                    iterations = 0;
+                }
+            }
+            if (!done) {
+                for (float i = startIndex; i <= lastIndex; i += step) {
+
+                    // update counter:
+                    set(controlLoopValueName, i);
+
+                    // do something.
+                    this.visit(ctx.block());
+                    iterations++;
+                }
+            }
+            commitLoop(event, "for", ctx, iterations, skipped, firstCommand);
+            return LogoValue.VOID;
+        }
+
+        /**
+         * Whether the periods of a loop body can be skipped: it only moves the turtle, without reading the given
+         * variable.
+         */
+        private boolean skipsPeriods(LogoParser.BlockContext block, String unread) {
+            // a profile sees every iteration run.
+            return skippingPeriods && profiler == null && motionOnlyLoops.computeIfAbsent(block,
+                    unknown -> Procedure.onlyMoves(block, procedures, unread));
+        }
+
+        /**
+         * Run a body that only moves the turtle a number of times. As soon as the turtle is back to where it
+         * entered the loop, heading the same way, the next iterations would only draw the same lines again: whole
+         * periods are skipped, though their commands count, and only the remaining iterations are run.
+         *
+         * @return the number of iterations skipped.
+         */
+        private long iterate(LogoParser.BlockContext block, long count) {
+            TurtleActionCallbacks drawing = turtle;
+            PoseTracker tracker = new PoseTracker(drawing);
+            long firstCommand = executedCommands;
+            long done = 0;
+            turtle = tracker;
+            try {
+                while (done < count && done < MAX_PERIOD) {
+                    this.visit(block);
+                    done++;
+                    if (tracker.isBackAtStart((count - done) / done)) {
+                        break;
+                    }
+                }
+            } finally {
+                turtle = drawing;
+            }
+            long skipped = 0;
+            long periods = done == 0 ? 0 : (count - done) / done;
+            if (done < count && tracker.isBackAtStart(periods)) {
+                skipped = periods * done;
+                executedCommands += periods * (executedCommands - firstCommand);
+                checkLimits();
+            }
+            for (done += skipped; done < count; done++) {
+                this.visit(block);
+            }
+            return skipped;
+        }
+
+        private void commitLoop(LoopEvent event, String kind, ParserRuleContext ctx, long iterations, long skipped,
+                                long firstCommand) {
+            if (event.shouldCommit()) {
+                event.kind = kind;
+                event.line = ctx.start.getLine() + lineOffset;
+                event.iterations = iterations;
+                event.skipped = skipped;
+                event.commands = executedCommands - firstCommand;
+                event.commit();
+            }
+        }
 
-                // update counter:
-                set(controlLoopValueName, i);
+        @Override
+        public LogoValue visitTell(LogoParser.TellContext ctx) {
+            int[] ids = turtleIds(ctx.turtles());
+            TurtleActionCallbacks selected = select(ids);
+            // what the previous turtles were told is theirs.
+            turtle.flush();
+            told = ids;
+            turtle = selected;
+            return LogoValue.VOID;
+        }
 
-                // do something.
+        @Override
+        public LogoValue visitAsk(LogoParser.AskContext ctx) {
+            int[] ids = turtleIds(ctx.turtles());
+            TurtleActionCallbacks selected = select(ids);
+            TurtleActionCallbacks telling = turtle;
+            int[] tellingIds = told;
+            turtle.flush();
+            turtle = selected;
+            try {
                 this.visit(ctx.block());
+                turtle.flush();
+            } finally {
+                told = tellingIds;
+                turtle = telling;
+            }
+            return LogoValue.VOID;
+        }
+
+        private int[] turtleIds(LogoParser.TurtlesContext ctx) {
+            int[] ids = new int[ctx.number().size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = createFloat(ctx.number(i).getText()).intValue();
+            }
+            return ids;
+        }
+
+        @Override
+        public LogoValue visitProcedureDeclaration(LogoParser.ProcedureDeclarationContext ctx) {
+            declare(new Procedure(ctx, lineOffset));
+            return LogoValue.VOID;
+        }
+
+        @Override
+        public LogoValue visitProcedureInvocation(LogoParser.ProcedureInvocationContext ctx) {
+            String name = ctx.name().getText();
+            Procedure procedure = procedures.get(name);
+            if (procedure == null) {
+                throw new RuntimeException("No such procedure: " + name);
+            }
+            if (ctx.expression().size() != procedure.parameters.size()) {
+                throw new RuntimeException(name + " expects " + procedure.parameters.size() + " arguments");
+            }
+            List<LogoValue> arguments = new ArrayList<>();
+            for (LogoParser.ExpressionContext expression : ctx.expression()) {
+                arguments.add(this.visit(expression));
+            }
+
+            ProcedureCallEvent event = new ProcedureCallEvent();
+            event.begin();
+            long firstCommand = executedCommands;
+            String key = null;
+            boolean shapeReused = false;
+            // a profile sees every invocation run, see setProfiler.
+            if (profiler == null && motionOnly.computeIfAbsent(name, unknown -> procedure.onlyMoves(procedures))) {
+                StringBuilder shapeKey = new StringBuilder(name);
+                for (LogoValue argument : arguments) {
+                    shapeKey.append(' ').append(argument.asString());
+                }
+                key = shapeKey.toString();
+                shapeReused = drawShape(procedure, arguments, key);
+            } else {
+                invoke(procedure, arguments);
+            }
+            if (event.shouldCommit()) {
+                event.procedure = name;
+                event.line = ctx.start.getLine() + lineOffset;
+                event.commands = executedCommands - firstCommand;
+                event.shapeReused = shapeReused;
+                event.segments = key == null ? 0 : shapes.get(key).getSegmentCount();
+                event.commit();
+            }
+            return LogoValue.VOID;
+        }
+
+        /**
+         * Same procedure and arguments, same shape: recorded once, then drawn where the turtle stands.
+         *
+         * @return whether the shape was recorded by a previous invocation.
+         */
+        private boolean drawShape(Procedure procedure, List<LogoValue> arguments, String key) {
+            Shape shape = shapes.get(key);
+            boolean reused = shape != null;
+            if (!reused) {
+                TurtleActionCallbacks drawing = turtle;
+                Shape.Recorder recorder = new Shape.Recorder();
+                long firstCommand = executedCommands;
+                turtle = recorder;
+                try {
+                    invoke(procedure, arguments);
+                } finally {
+                    turtle = drawing;
+                }
+                shape = recorder.toShape(key, executedCommands - firstCommand);
+                shapes.put(key, shape);
+            } else {
+                // the commands are not executed again, but count all the same.
+                executedCommands += shape.getCommandCount();
+                checkLimits();
+            }
+            turtle.drawShape(shape);
+            return reused;
+        }
+
+        private void invoke(Procedure procedure, List<LogoValue> arguments) {
+            // parameters hide the global variables of the same name until the end of the invocation.
+            Map<String, LogoValue> hidden = new HashMap<>();
+            for (int i = 0; i < arguments.size(); i++) {
+                String parameter = procedure.parameters.get(i);
+                hidden.put(parameter, memory.put(parameter, arguments.get(i)));
+            }
+            if (profiler != null) {
+                profiler.enter(procedure.name);
             }
+            // the body may come from another part of the script than the invocation.
+            int invocationLineOffset = lineOffset;
+            lineOffset = procedure.lineOffset;
+            try {
+                for (LogoParser.LineContext line : procedure.body()) {
+                    this.visit(line);
+                }
+            } finally {
+                lineOffset = invocationLineOffset;
+                if (profiler != null) {
+                    profiler.exit();
+                }
+                for (Map.Entry<String, LogoValue> variable : hidden.entrySet()) {
+                    if (variable.getValue() == null) {
+                        memory.remove(variable.getKey());
+                    } else {
+                        memory.put(variable.getKey(), variable.getValue());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public LogoValue visitRepeat(LogoParser.RepeatContext ctx) {
+            int count = createFloat(ctx.number().getText()).intValue();
+            LoopEvent event = new LoopEvent();
+            event.begin();
+            long firstCommand = executedCommands;
+            long skipped = 0;
+            if (skipsPeriods(ctx.block(), null)) {
+                skipped = iterate(ctx.block(), count);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    this.visit(ctx.block());
+                }
+            }
+            commitLoop(event, "repeat", ctx, count, skipped, firstCommand);
             return LogoValue.VOID;
         }
     }
 
+    /**
+     * Limit the number of commands executed by each call to {@link #interpret(String)}, loop iterations included.
+     * Beyond that, an {@link ExecutionLimitException} is thrown.
+     */
+    public void setCommandLimit(long commandLimit) {
+        this.commandLimit = commandLimit;
+    }
+
+    /**
+     * Limit the duration of each call to {@link #interpret(String)}. Beyond that, or if the interpreting thread is
+     * interrupted, an {@link ExecutionLimitException} is thrown.
+     */
+    public void setTimeLimit(long duration, TimeUnit unit) {
+        this.timeLimitNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * @return the number of commands executed since this program was created, loop iterations included.
+     */
+    public long getExecutedCommands() {
+        return executedCommands;
+    }
+
+    /**
+     * Skip the iterations of 'repeat' and 'for' loops that would only draw the same lines again: once a loop body
+     * that only moves the turtle brings it back to where it entered the loop, heading the same way, whole periods
+     * are skipped and only the remaining iterations run, so the turtle ends up exactly where it would have.
+     * Skipped iterations count as executed commands, but draw no segments: an 'undo' after the loop removes the
+     * segments drawn before them instead. Off by default.
+     */
+    public void setSkippingPeriods(boolean skippingPeriods) {
+        this.skippingPeriods = skippingPeriods;
+    }
+
+    /**
+     * Profile the next interpret calls, or stop profiling with null. Must not be called while interpreting.
+     *
+     * While profiling, shapes are not reused and periods are not skipped (see {@link #setSkippingPeriods(boolean)}):
+     * every command runs, so its time and turtle commands are attributed to its own procedure and line.
+     */
+    public void setProfiler(LogoProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Parse with parsers from that source, the parser of the interpreting thread by default. Must not be called
+     * while interpreting.
+     */
+    public void setParsers(LogoParsers.Source parsers) {
+        this.parsers = parsers;
+    }
+
+    /**
+     * Provide the turtles told by 'tell' and 'ask', but turtle 0 which is the one given to the constructor. Each
+     * turtle is asked for once, the first time it is told something; without provider, there is only turtle 0.
+     * Must not be called while interpreting.
+     */
+    public void setTurtleProvider(TurtleProvider turtleProvider) {
+        this.turtleProvider = turtleProvider;
+    }
+
+    /**
+     * The callbacks the commands are handed to: a single turtle, or a {@link Swarm} of them.
+     */
+    private TurtleActionCallbacks select(int[] ids) {
+        TurtleActionCallbacks selected;
+        if (ids.length == 1) {
+            selected = turtle(ids[0]);
+        } else {
+            List<TurtleActionCallbacks> swarm = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                TurtleActionCallbacks turtle = turtle(id);
+                // a turtle told twice would draw everything twice, from two threads.
+                if (!swarm.contains(turtle)) {
+                    swarm.add(turtle);
+                }
+            }
+            selected = swarm.size() == 1 ? swarm.get(0) : new Swarm(swarm, turtlePool);
+        }
+        return profiler == null ? selected : profiler.counting(selected);
+    }
+
+    private TurtleActionCallbacks turtle(int id) {
+        TurtleActionCallbacks turtle = turtles.get(id);
+        if (turtle == null) {
+            if (turtleProvider == null) {
+                throw new RuntimeException("No such turtle: " + id);
+            }
+            turtle = turtleProvider.turtle(id);
+            turtles.put(id, turtle);
+        }
+        return turtle;
+    }
+
+    /**
+     * Declare a procedure, replacing any procedure of the same name.
+     */
+    void declare(Procedure procedure) {
+        procedures.put(procedure.name, procedure);
+        // other procedures and loops may invoke it.
+        motionOnly.clear();
+        motionOnlyLoops.clear();
+        shapes.clear();
+    }
+
+    SyntaxErrorHandler getSyntaxErrorHandler() {
+        return syntaxErrorHandler;
+    }
+
     public LogoRuntime getRuntime() {
         return runtime;
     }
 
+    public interface TurtleProvider {
+        /**
+         * @param id number of the turtle, at least 1.
+         * @return the turtle, with its own position, heading, pen and drawing; it may be used by any thread, but
+         * by one at a time.
+         */
+        TurtleActionCallbacks turtle(int id);
+    }
+
     public interface SyntaxErrorHandler {
         void onSyntaxError(String msg);
+
+        /**
+         * @param line   line of the script, starting at 1.
+         * @param column column in the line, starting at 1.
+         */
+        default void onSyntaxError(int line, int column, String msg) {
+            onSyntaxError("line " + line + ":" + column + " " + msg);
+        }
     }
 }
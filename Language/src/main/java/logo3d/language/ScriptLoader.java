@@ -0,0 +1,268 @@
+package logo3d.language;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Feed a script file to a {@link Program}, a batch of lines at a time.
+ *
+ * The file is memory-mapped window by window, so even a multi-megabyte script starts executing as soon as its
+ * first batch is read. A procedure declaration ('to' ... 'end') is never split across two batches.
+ */
+public class ScriptLoader {
+
+    private static final Logger LOG = getLogger(ScriptLoader.class);
+
+    // size of a mapped window of the file.
+    static final int WINDOW_SIZE = 16 * 1024 * 1024;
+
+    // a batch is interpreted as soon as it holds that many bytes of complete lines.
+    static final int BATCH_SIZE = 16 * 1024;
+
+    // minimum delay between two progress reports.
+    private static final long REPORT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final Program program;
+    // the loads prepared and not finished yet, queued or running: all cancelled by cancel().
+    private final Set<Ticket> loads = ConcurrentHashMap.newKeySet();
+
+    public ScriptLoader(Program program) {
+        this.program = program;
+    }
+
+    /**
+     * Prepare a load to be run later, typically when it is queued on another thread: a {@link #cancel()} from now
+     * on cancels it, even before it starts. Can be called from any thread.
+     */
+    public Ticket prepare() {
+        Ticket ticket = new Ticket();
+        loads.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Interpret the whole file, in the calling thread.
+     *
+     * @return the final progress, telling whether the load was cancelled.
+     */
+    public Progress load(Path path, ProgressListener listener) throws IOException {
+        return load(prepare(), path, listener);
+    }
+
+    /**
+     * Interpret the whole file, in the calling thread, unless the prepared load was cancelled already.
+     *
+     * @return the final progress, telling whether the load was cancelled.
+     */
+    public Progress load(Ticket ticket, Path path, ProgressListener listener) throws IOException {
+        try {
+            return run(ticket, path, listener);
+        } finally {
+            loads.remove(ticket);
+        }
+    }
+
+    private Progress run(Ticket ticket, Path path, ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Progress progress = new Progress(size, start);
+            long firstCommand = program.getExecutedCommands();
+
+            // position of the first byte not yet interpreted, and its line.
+            long batchStart = 0;
+            int batchLine = 1;
+            long lastReport = start;
+
+            while (batchStart < size && !ticket.cancelled) {
+                long windowLength = Math.min(WINDOW_SIZE, size - batchStart);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, batchStart, windowLength);
+
+                // scan complete lines, interpret a batch each time it is large enough.
+                // batches always end outside of a procedure, so each window starts outside of one.
+                int procedureDepth = 0;
+                int batchEnd = 0;
+                int lineStart = 0;
+                int batchLines = 0;
+                for (int i = 0; i < windowLength && !ticket.cancelled; i++) {
+                    boolean lastByte = batchStart + i == size - 1;
+                    if (window.get(i) != '\n' && !lastByte) {
+                        continue;
+                    }
+                    int lineEnd = i + 1;
+                    if (startsWith(window, lineStart, lineEnd, "to")) {
+                        procedureDepth++;
+                    } else if (procedureDepth > 0 && startsWith(window, lineStart, lineEnd, "end")) {
+                        procedureDepth--;
+                    }
+                    batchLines++;
+                    lineStart = lineEnd;
+
+                    if (procedureDepth == 0 && (lineEnd - batchEnd >= BATCH_SIZE || lastByte)) {
+                        interpret(window, batchEnd, lineEnd, batchLine);
+                        progress.update(batchStart + lineEnd, program.getExecutedCommands() - firstCommand);
+                        batchLine += batchLines;
+                        batchLines = 0;
+                        batchEnd = lineEnd;
+
+                        long now = System.nanoTime();
+                        if (now - lastReport >= REPORT_INTERVAL) {
+                            lastReport = now;
+                            listener.onProgress(progress);
+                        }
+                    }
+                }
+
+                if (ticket.cancelled) {
+                    break;
+                }
+                if (batchEnd == 0 && windowLength == WINDOW_SIZE) {
+                    throw new IOException("A single command or procedure is larger than " + WINDOW_SIZE + " bytes");
+                }
+                // the next window starts with the first line not yet interpreted.
+                batchStart += batchEnd;
+                if (batchEnd == 0) {
+                    // an unterminated procedure at the end of the file: let the parser report it.
+                    interpret(window, 0, (int) windowLength, batchLine);
+                    progress.update(size, program.getExecutedCommands() - firstCommand);
+                    batchStart = size;
+                }
+            }
+
+            progress.finish(ticket.cancelled);
+            listener.onProgress(progress);
+            LOG.info("{} {}", path, progress);
+            return progress;
+        }
+    }
+
+    /**
+     * Stop the current load after the batch being interpreted, and the loads prepared but not started yet. Can be
+     * called from any thread.
+     */
+    public void cancel() {
+        for (Ticket ticket : loads) {
+            ticket.cancelled = true;
+        }
+    }
+
+    /**
+     * A load prepared by {@link #prepare()}.
+     */
+    public static final class Ticket {
+        private volatile boolean cancelled;
+
+        private Ticket() {
+        }
+    }
+
+    private void interpret(MappedByteBuffer window, int from, int to, int firstLine) {
+        byte[] bytes = new byte[to - from];
+        // a view, the position of the window is left alone.
+        ByteBuffer batch = window.duplicate();
+        batch.position(from);
+        batch.get(bytes);
+        program.interpret(new String(bytes, StandardCharsets.UTF_8), firstLine);
+    }
+
+    /**
+     * Whether the line starts with the given keyword, ignoring leading blanks.
+     */
+    private static boolean startsWith(MappedByteBuffer window, int from, int to, String keyword) {
+        int i = from;
+        while (i < to && (window.get(i) == ' ' || window.get(i) == '\t')) {
+            i++;
+        }
+        if (to - i < keyword.length()) {
+            return false;
+        }
+        for (int k = 0; k < keyword.length(); k++) {
+            if (window.get(i + k) != keyword.charAt(k)) {
+                return false;
+            }
+        }
+        // the keyword must be a whole word.
+        int next = i + keyword.length();
+        return next == to || Character.isWhitespace(window.get(next));
+    }
+
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    public static class Progress {
+        private final long totalBytes;
+        private final long start;
+        private volatile long bytesProcessed;
+        private volatile long commandsProcessed;
+        private volatile long elapsedNanos;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+
+        Progress(long totalBytes, long start) {
+            this.totalBytes = totalBytes;
+            this.start = start;
+        }
+
+        void update(long bytesProcessed, long commandsProcessed) {
+            this.bytesProcessed = bytesProcessed;
+            this.commandsProcessed = commandsProcessed;
+            this.elapsedNanos = System.nanoTime() - start;
+        }
+
+        void finish(boolean cancelled) {
+            this.elapsedNanos = System.nanoTime() - start;
+            this.cancelled = cancelled;
+            this.done = true;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        /**
+         * @return the number of commands executed by the script so far, loop iterations included, as counted by
+         * {@link Program#getExecutedCommands()}.
+         */
+        public long getCommandsProcessed() {
+            return commandsProcessed;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytesProcessed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            String state = cancelled ? "cancelled" : done ? "done" : "loading";
+            return String.format(Locale.ROOT, "%s: %d/%d bytes, %d commands, %.1f KB/s",
+                    state, bytesProcessed, totalBytes, commandsProcessed, getBytesPerSecond() / 1024);
+        }
+    }
+}
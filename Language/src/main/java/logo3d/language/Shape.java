@@ -0,0 +1,207 @@
+package logo3d.language;
+
+import java.util.Arrays;
+
+/**
+ * What a procedure invocation draws, relative to where the turtle stands: the moves and turns it made, the
+ * segments they draw with the pen down, and where the turtle ends up.
+ *
+ * Coordinates follow the conventions of the turtles: it starts at the origin heading to -Z, draws on the XZ plane,
+ * and turns right clockwise when seen from above. Immutable.
+ */
+public final class Shape {
+
+    public static final int FLOATS_PER_SEGMENT = 6;
+
+    private final String key;
+    private final long commandCount;
+
+    // the recorded commands: a move (forward if positive) or a turn (left if positive) each.
+    private final boolean[] turns;
+    private final float[] values;
+
+    // x0, y0, z0, x1, y1, z1 per segment, y is always 0.
+    private final float[] segments;
+
+    private final float endX;
+    private final float endZ;
+    private final float endHeading;
+
+    private Shape(Recorder recorder, String key, long commandCount) {
+        this.key = key;
+        this.commandCount = commandCount;
+        this.turns = Arrays.copyOf(recorder.turns, recorder.commands);
+        this.values = Arrays.copyOf(recorder.values, recorder.commands);
+        this.segments = Arrays.copyOf(recorder.segments, recorder.segmentFloats);
+        this.endX = recorder.x;
+        this.endZ = recorder.z;
+        this.endHeading = recorder.heading;
+    }
+
+    /**
+     * @return the procedure and arguments this shape was recorded for.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of Logo commands executed to record it, loop iterations included.
+     */
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * @return the segments drawn with the pen down, {@link #FLOATS_PER_SEGMENT} floats each. Must not be modified.
+     */
+    public float[] getSegments() {
+        return segments;
+    }
+
+    public int getSegmentCount() {
+        return segments.length / FLOATS_PER_SEGMENT;
+    }
+
+    public float getEndX() {
+        return endX;
+    }
+
+    public float getEndZ() {
+        return endZ;
+    }
+
+    /**
+     * @return the heading at the end in degrees, positive to the left, in [0, 360[.
+     */
+    public float getEndHeading() {
+        return endHeading;
+    }
+
+    /**
+     * Hand the recorded commands over, one by one.
+     */
+    public void replay(TurtleActionCallbacks callbacks) {
+        for (int i = 0; i < values.length; i++) {
+            float value = values[i];
+            if (turns[i]) {
+                if (value > 0f) {
+                    callbacks.turnLeft(value);
+                } else {
+                    callbacks.turnRight(-value);
+                }
+            } else if (value >= 0f) {
+                callbacks.forward(value);
+            } else {
+                callbacks.backward(-value);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Shape{" + key + ", " + getSegmentCount() + " segments}";
+    }
+
+    /**
+     * Records the moves and turns of a procedure invocation; any other command is a bug of the caller.
+     */
+    static class Recorder implements TurtleActionCallbacks {
+
+        private boolean[] turns = new boolean[16];
+        private float[] values = new float[16];
+        private int commands;
+
+        private float[] segments = new float[16 * FLOATS_PER_SEGMENT];
+        private int segmentFloats;
+
+        private float x;
+        private float z;
+        private float heading;
+
+        @Override
+        public void forward(float value) {
+            record(false, value);
+            double radians = Math.toRadians(heading);
+            float newX = x - (float) Math.sin(radians) * value;
+            float newZ = z - (float) Math.cos(radians) * value;
+            if (segmentFloats == segments.length) {
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            }
+            segments[segmentFloats++] = x;
+            segments[segmentFloats++] = 0f;
+            segments[segmentFloats++] = z;
+            segments[segmentFloats++] = newX;
+            segments[segmentFloats++] = 0f;
+            segments[segmentFloats++] = newZ;
+            x = newX;
+            z = newZ;
+        }
+
+        @Override
+        public void backward(float value) {
+            forward(-value);
+        }
+
+        @Override
+        public void turnLeft(float degree) {
+            record(true, degree);
+            float normalized = (heading + degree) % 360f;
+            heading = normalized < 0f ? normalized + 360f : normalized;
+        }
+
+        @Override
+        public void turnRight(float degree) {
+            turnLeft(-degree);
+        }
+
+        @Override
+        public void penUp() {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        @Override
+        public void penDown() {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        @Override
+        public void home() {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        @Override
+        public void setXY(float x, float y) {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        @Override
+        public void clearScreen() {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        @Override
+        public void undo(int segments) {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        @Override
+        public void print(String msg) {
+            throw new IllegalStateException("Only moves and turns can be recorded");
+        }
+
+        Shape toShape(String key, long commandCount) {
+            return new Shape(this, key, commandCount);
+        }
+
+        private void record(boolean turn, float value) {
+            if (commands == values.length) {
+                turns = Arrays.copyOf(turns, commands * 2);
+                values = Arrays.copyOf(values, commands * 2);
+            }
+            turns[commands] = turn;
+            values[commands] = value;
+            commands++;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package logo3d.language;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * The turtles told the same commands by 'tell' or 'ask': each of them has its own position, heading, pen and
+ * drawing, and draws what it is told independently of the others.
+ *
+ * Commands are recorded in batches of at most {@link #MAX_PENDING}, then each turtle runs the batch as a single
+ * task on the pool, in the order the commands were given: a turtle is only ever used by one task at a time, and the
+ * turtles share no state. The next batch is recorded while the turtles draw the previous one, and handed over once
+ * they are all done with it. {@link #flush()} waits for the turtles, and throws what any of them threw.
+ */
+class Swarm implements TurtleActionCallbacks {
+
+    // commands handed over at least every that many, so the turtles start drawing.
+    static final int MAX_PENDING = 4096;
+
+    private final List<TurtleActionCallbacks> turtles;
+    private final Executor pool;
+
+    private List<Consumer<TurtleActionCallbacks>> pending = new ArrayList<>();
+    // the batch each turtle is drawing, done at first.
+    private final CompletableFuture<?>[] drawing;
+
+    Swarm(List<TurtleActionCallbacks> turtles, Executor pool) {
+        this.turtles = turtles;
+        this.pool = pool;
+        drawing = new CompletableFuture<?>[turtles.size()];
+        for (int i = 0; i < drawing.length; i++) {
+            drawing[i] = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Override
+    public void forward(float value) {
+        record(turtle -> turtle.forward(value));
+    }
+
+    @Override
+    public void backward(float value) {
+        record(turtle -> turtle.backward(value));
+    }
+
+    @Override
+    public void turnLeft(float degree) {
+        record(turtle -> turtle.turnLeft(degree));
+    }
+
+    @Override
+    public void turnRight(float degree) {
+        record(turtle -> turtle.turnRight(degree));
+    }
+
+    @Override
+    public void drawShape(Shape shape) {
+        record(turtle -> turtle.drawShape(shape));
+    }
+
+    @Override
+    public void penUp() {
+        record(TurtleActionCallbacks::penUp);
+    }
+
+    @Override
+    public void penDown() {
+        record(TurtleActionCallbacks::penDown);
+    }
+
+    @Override
+    public void home() {
+        record(TurtleActionCallbacks::home);
+    }
+
+    @Override
+    public void setXY(float x, float y) {
+        record(turtle -> turtle.setXY(x, y));
+    }
+
+    @Override
+    public void clearScreen() {
+        record(TurtleActionCallbacks::clearScreen);
+    }
+
+    @Override
+    public void undo(int segments) {
+        record(turtle -> turtle.undo(segments));
+    }
+
+    /**
+     * Printed once, by the first turtle.
+     */
+    @Override
+    public void print(String msg) {
+        TurtleActionCallbacks first = turtles.get(0);
+        record(turtle -> {
+            if (turtle == first) {
+                turtle.print(msg);
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        pending.add(TurtleActionCallbacks::flush);
+        dispatch();
+        awaitTurtles();
+    }
+
+    private void record(Consumer<TurtleActionCallbacks> command) {
+        pending.add(command);
+        if (pending.size() >= MAX_PENDING) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Hand the pending commands over once the turtles are done with the previous ones.
+     */
+    private void dispatch() {
+        awaitTurtles();
+        List<Consumer<TurtleActionCallbacks>> batch = pending;
+        pending = new ArrayList<>();
+        for (int i = 0; i < drawing.length; i++) {
+            TurtleActionCallbacks turtle = turtles.get(i);
+            drawing[i] = CompletableFuture.runAsync(() -> batch.forEach(command -> command.accept(turtle)), pool);
+        }
+    }
+
+    private void awaitTurtles() {
+        RuntimeException failure = null;
+        for (CompletableFuture<?> batch : drawing) {
+            try {
+                batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionLimitException("Program was interrupted");
+            } catch (ExecutionException e) {
+                // all the turtles are waited for, the first failure is thrown.
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            // the program stops there: what was not handed over yet is dropped.
+            pending = new ArrayList<>();
+            for (int i = 0; i < drawing.length; i++) {
+                drawing[i] = CompletableFuture.completedFuture(null);
+            }
+            throw failure;
+        }
+    }
+}
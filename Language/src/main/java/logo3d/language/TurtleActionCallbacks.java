@@ -27,7 +27,46 @@ public interface TurtleActionCallbacks {
         LOG.info("Should turn right by {} degree", degree);
     }
 
+    default void penUp() {
+        LOG.info("Should lift the pen");
+    }
+
+    default void penDown() {
+        LOG.info("Should put the pen down");
+    }
+
+    default void home() {
+        LOG.info("Should go home");
+    }
+
+    default void setXY(float x, float y) {
+        LOG.info("Should go to {}, {}", x, y);
+    }
+
+    default void clearScreen() {
+        LOG.info("Should clear the screen");
+    }
+
+    default void undo(int segments) {
+        LOG.info("Should undo the last {} segments", segments);
+    }
+
     default void print(String msg) {
         LOG.info("Should print {}", msg);
     }
+
+    /**
+     * Draw the shape of a procedure invocation where the turtle stands, and move the turtle to its end. The same
+     * shape is drawn again for each invocation with the same arguments: implementations may build its geometry once
+     * and draw copies of it. By default, its moves and turns are replayed.
+     */
+    default void drawShape(Shape shape) {
+        shape.replay(this);
+    }
+
+    /**
+     * Called once a program has been interpreted: any command held back must be handed over now.
+     */
+    default void flush() {
+    }
 }
@@ -0,0 +1,71 @@
+package logo3d.language.drawing;
+
+import org.slf4j.Logger;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Explicit release of direct buffers, instead of waiting for the garbage collector to notice them.
+ */
+final class DirectBuffers {
+
+    private static final Logger LOG = getLogger(DirectBuffers.class);
+
+    private static final Consumer<ByteBuffer> RELEASE = lookupRelease();
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * Free the memory of a buffer returned by {@link ByteBuffer#allocateDirect(int)} (not a view of it).
+     * The buffer must not be used afterwards.
+     */
+    static void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            RELEASE.accept(buffer);
+        }
+    }
+
+    private static Consumer<ByteBuffer> lookupRelease() {
+        // java 9 and later
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.trace("No Unsafe.invokeCleaner", e);
+        }
+        // java 8
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object bufferCleaner = invoke(cleaner, buffer);
+                if (bufferCleaner != null) {
+                    invoke(clean, bufferCleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.trace("No DirectBuffer.cleaner", e);
+        }
+        LOG.warn("Direct buffers cannot be released explicitly, they will be freed by the garbage collector");
+        return buffer -> {
+        };
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to release a direct buffer", e);
+        }
+    }
+}
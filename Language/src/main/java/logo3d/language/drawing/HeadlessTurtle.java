@@ -0,0 +1,161 @@
+package logo3d.language.drawing;
+
+import logo3d.language.ExecutionLimitException;
+import logo3d.language.TurtleActionCallbacks;
+
+/**
+ * A turtle without display: commands are applied at once, and the lines drawn are appended to a
+ * {@link SegmentStore}.
+ *
+ * It follows the same conventions as the desktop turtle: it draws on the XZ plane, starts at the origin heading
+ * to -Z (the Logo Y axis), and turns right clockwise when seen from above. Not thread-safe.
+ *
+ * With a {@link SegmentDeduplicator}, a segment drawn again over an existing one is not stored twice, though it
+ * counts for 'undo' as any segment drawn.
+ */
+public class HeadlessTurtle implements TurtleActionCallbacks {
+
+    // a single pen for now.
+    private static final int PEN = 0;
+
+    private final SegmentStore segments;
+    private final long maxSegments;
+
+    private float x;
+    private float z;
+    // degrees around Y, 0 is heading to -Z: kept in degrees so that integer turns stay exact.
+    private float heading;
+    private boolean penDown = true;
+
+    private SegmentDeduplicator deduplicator;
+
+    public HeadlessTurtle(SegmentStore segments) {
+        this(segments, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSegments size of the drawing beyond which an {@link ExecutionLimitException} is thrown.
+     */
+    public HeadlessTurtle(SegmentStore segments, long maxSegments) {
+        this.segments = segments;
+        this.maxSegments = maxSegments;
+    }
+
+    @Override
+    public void forward(float value) {
+        double radians = Math.toRadians(heading);
+        moveTo(x - (float) Math.sin(radians) * value, z - (float) Math.cos(radians) * value);
+    }
+
+    @Override
+    public void backward(float value) {
+        forward(-value);
+    }
+
+    @Override
+    public void turnLeft(float degree) {
+        heading = normalize(heading + degree);
+    }
+
+    @Override
+    public void turnRight(float degree) {
+        turnLeft(-degree);
+    }
+
+    @Override
+    public void penUp() {
+        penDown = false;
+    }
+
+    @Override
+    public void penDown() {
+        penDown = true;
+    }
+
+    @Override
+    public void home() {
+        moveTo(0f, 0f);
+        heading = 0f;
+    }
+
+    @Override
+    public void setXY(float x, float y) {
+        moveTo(x, -y);
+    }
+
+    @Override
+    public void clearScreen() {
+        segments.clear();
+        if (deduplicator != null) {
+            deduplicator.clear();
+        }
+    }
+
+    @Override
+    public void undo(int count) {
+        if (deduplicator == null) {
+            segments.truncate(Math.max(0, segments.size() - count));
+        } else {
+            // the duplicates dropped count, and the undone segments can be drawn again.
+            segments.truncate(deduplicator.undo(count));
+        }
+    }
+
+    @Override
+    public void print(String msg) {
+        // no console to print to.
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    /**
+     * @return the heading in degrees, in [0, 360[.
+     */
+    public float getHeading() {
+        return heading;
+    }
+
+    public boolean isPenDown() {
+        return penDown;
+    }
+
+    public SegmentStore getSegments() {
+        return segments;
+    }
+
+    /**
+     * Drop the segments drawn over existing ones from now on, or keep them all with null.
+     */
+    public void setDeduplicator(SegmentDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        if (deduplicator != null) {
+            deduplicator.reset(segments, PEN);
+        }
+    }
+
+    private void moveTo(float newX, float newZ) {
+        if (penDown && (deduplicator == null || deduplicator.add(x, 0f, z, newX, 0f, newZ, PEN))) {
+            if (segments.size() >= maxSegments) {
+                if (deduplicator != null) {
+                    // forget the segment just recorded, it is not drawn.
+                    deduplicator.truncate(segments.size());
+                }
+                throw new ExecutionLimitException("Drawing is limited to " + maxSegments + " segments");
+            }
+            segments.add(x, 0f, z, newX, 0f, newZ);
+        }
+        x = newX;
+        z = newZ;
+    }
+
+    private static float normalize(float degree) {
+        float normalized = degree % 360f;
+        return normalized < 0f ? normalized + 360f : normalized;
+    }
+}
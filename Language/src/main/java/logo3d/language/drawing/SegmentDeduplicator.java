@@ -0,0 +1,264 @@
+package logo3d.language.drawing;
+
+import java.util.Arrays;
+
+/**
+ * Spatial hash of the segments drawn so far, to drop a segment drawn again over an existing one with the same pen.
+ *
+ * Endpoints are quantized on a grid, and a segment is the same whichever way it is drawn. Segments are kept in a
+ * primitive open-addressing table (linear probing, 7 longs per slot): no boxed key is allocated per segment.
+ *
+ * The segments are recorded in the order of the store they are drawn to, so that an undo forgets the last ones
+ * with {@link #truncate(long)}: with linear probing, emptying the slots in the reverse order they were filled
+ * leaves the table exactly as it was, without rehashing the remaining segments.
+ *
+ * The duplicates dropped are counted where they were written, between the segments recorded, so that
+ * {@link #undo(long)} forgets the segments as they were written: an undo after retracing a line forgets the
+ * retraced line, not an older one.
+ * Not thread-safe.
+ */
+public class SegmentDeduplicator {
+
+    public static final float DEFAULT_QUANTUM = 1e-3f;
+
+    private static final int SLOT_LONGS = 7;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final float quantum;
+
+    // hash of each slot, 0 for an empty slot.
+    private int[] hashes;
+    // quantized coordinates and pen of each slot.
+    private long[] keys;
+    private int size;
+
+    // slot of each segment recorded, in order; -1 for a duplicate already in the store, see reset.
+    private int[] order;
+    private int recorded;
+
+    // runs of duplicates dropped, in order: the number of segments recorded before each run, and its length.
+    private int[] runStarts = new int[16];
+    private long[] runLengths = new long[16];
+    private int runs;
+    private long dropped;
+
+    // the key being looked up, to avoid an allocation per segment.
+    private final long[] key = new long[SLOT_LONGS];
+
+    public SegmentDeduplicator() {
+        this(DEFAULT_QUANTUM);
+    }
+
+    /**
+     * @param quantum size of a grid cell: endpoints closer than that are considered equal.
+     */
+    public SegmentDeduplicator(float quantum) {
+        this.quantum = quantum;
+        clear();
+    }
+
+    /**
+     * Record a segment.
+     *
+     * @return true if it is new, false if the same segment was already drawn with the same pen.
+     */
+    public boolean add(float x0, float y0, float z0, float x1, float y1, float z1, int pen) {
+        if (record(x0, y0, z0, x1, y1, z1, pen, false)) {
+            return true;
+        }
+        if (runs > 0 && runStarts[runs - 1] == recorded) {
+            runLengths[runs - 1]++;
+        } else {
+            if (runs == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, runs * 2);
+                runLengths = Arrays.copyOf(runLengths, runs * 2);
+            }
+            runStarts[runs] = recorded;
+            runLengths[runs] = 1;
+            runs++;
+        }
+        dropped++;
+        return false;
+    }
+
+    /**
+     * @return the number of distinct segments recorded.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of duplicates dropped by {@link #add} and not undone.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void clear() {
+        hashes = new int[INITIAL_CAPACITY];
+        keys = new long[INITIAL_CAPACITY * SLOT_LONGS];
+        order = new int[INITIAL_CAPACITY];
+        size = 0;
+        recorded = 0;
+        runs = 0;
+        dropped = 0;
+    }
+
+    /**
+     * Forget everything, and record the segments of a store instead (when deduplicating from now on for instance).
+     */
+    public void reset(SegmentStore segments, int pen) {
+        clear();
+        float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+        for (long i = 0; i < segments.size(); i++) {
+            segments.get(i, segment);
+            record(segment[0], segment[1], segment[2], segment[3], segment[4], segment[5], pen, true);
+        }
+    }
+
+    /**
+     * Forget the last segments recorded, after the store they were drawn to was truncated to the same size.
+     * Costs the number of segments forgotten, not the number kept.
+     */
+    public void truncate(long segments) {
+        if (segments < 0 || segments > recorded) {
+            throw new IllegalArgumentException("cannot truncate " + recorded + " segments to " + segments);
+        }
+        while (recorded > segments) {
+            int slot = order[--recorded];
+            if (slot >= 0) {
+                hashes[slot] = 0;
+                size--;
+            }
+        }
+        // the duplicates dropped after the segments forgotten.
+        while (runs > 0 && runStarts[runs - 1] > segments) {
+            dropped -= runLengths[--runs];
+        }
+    }
+
+    /**
+     * Forget the last segments written, the duplicates dropped as well as the segments recorded: the duplicates
+     * dropped count as drawn, though they are not in the store.
+     *
+     * @return the number of segments recorded left, to truncate the store to.
+     */
+    public long undo(long segments) {
+        while (segments > 0 && (recorded > 0 || runs > 0)) {
+            long recordedAfterRun = recorded - (runs == 0 ? 0 : runStarts[runs - 1]);
+            if (recordedAfterRun > 0) {
+                long undone = Math.min(segments, recordedAfterRun);
+                truncate(recorded - undone);
+                segments -= undone;
+            } else {
+                long undone = Math.min(segments, runLengths[runs - 1]);
+                runLengths[runs - 1] -= undone;
+                dropped -= undone;
+                segments -= undone;
+                if (runLengths[runs - 1] == 0) {
+                    runs--;
+                }
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * @param keepDuplicate record a duplicate too, as it is in the store already.
+     */
+    private boolean record(float x0, float y0, float z0, float x1, float y1, float z1, int pen,
+                           boolean keepDuplicate) {
+        long qx0 = quantize(x0), qy0 = quantize(y0), qz0 = quantize(z0);
+        long qx1 = quantize(x1), qy1 = quantize(y1), qz1 = quantize(z1);
+
+        // the same segment, whichever way it is drawn: smallest endpoint first.
+        boolean swap = qx0 > qx1 || (qx0 == qx1 && (qy0 > qy1 || (qy0 == qy1 && qz0 > qz1)));
+        if (swap) {
+            key[0] = qx1; key[1] = qy1; key[2] = qz1; key[3] = qx0; key[4] = qy0; key[5] = qz0;
+        } else {
+            key[0] = qx0; key[1] = qy0; key[2] = qz0; key[3] = qx1; key[4] = qy1; key[5] = qz1;
+        }
+        key[6] = pen;
+
+        int hash = hash(key);
+        int mask = hashes.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            if (hashes[slot] == 0) {
+                hashes[slot] = hash;
+                System.arraycopy(key, 0, keys, slot * SLOT_LONGS, SLOT_LONGS);
+                append(slot);
+                if (++size * 2 > hashes.length) {
+                    grow(hashes.length * 2);
+                }
+                return true;
+            }
+            if (hashes[slot] == hash && sameKey(slot)) {
+                if (keepDuplicate) {
+                    append(-1);
+                }
+                return false;
+            }
+        }
+    }
+
+    private long quantize(float coordinate) {
+        // a long: an int saturates beyond 2.1e6 with the default quantum.
+        return Math.round((double) coordinate / quantum);
+    }
+
+    private boolean sameKey(int slot) {
+        int offset = slot * SLOT_LONGS;
+        for (int i = 0; i < SLOT_LONGS; i++) {
+            if (keys[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(int slot) {
+        if (recorded == order.length) {
+            order = Arrays.copyOf(order, recorded * 2);
+        }
+        order[recorded++] = slot;
+    }
+
+    /**
+     * Rehash in the order the segments were recorded, so that truncate still empties slots in reverse order.
+     */
+    private void grow(int capacity) {
+        int[] oldHashes = hashes;
+        long[] oldKeys = keys;
+        hashes = new int[capacity];
+        keys = new long[capacity * SLOT_LONGS];
+        int mask = capacity - 1;
+        for (int i = 0; i < recorded; i++) {
+            int old = order[i];
+            if (old < 0) {
+                continue;
+            }
+            int slot = oldHashes[old] & mask;
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[old];
+            System.arraycopy(oldKeys, old * SLOT_LONGS, keys, slot * SLOT_LONGS, SLOT_LONGS);
+            order[i] = slot;
+        }
+    }
+
+    private static int hash(long[] key) {
+        int hash = 1;
+        for (long value : key) {
+            hash = 31 * hash + (int) (value ^ (value >>> 32));
+        }
+        // spread the bits (murmur3 finalizer), 0 marks an empty slot.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,178 @@
+package logo3d.language.drawing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only store of line segments, kept off-heap in fixed-size pages of direct memory.
+ *
+ * A segment is 6 native-order floats (x0, y0, z0, x1, y1, z1), so a page can be handed as is to the GPU as a
+ * vertex buffer of lines. The heap only holds one small object per page, the segments themselves are bounded by
+ * -XX:MaxDirectMemorySize (24 bytes each, 1.2 GB for 50M segments).
+ *
+ * Pages are released explicitly by {@link #truncate(long)}, {@link #clear()} and {@link #close()}: a page returned
+ * by {@link #getPage(int)} must not be used after it has been released. Not thread-safe.
+ */
+public class SegmentStore implements AutoCloseable {
+
+    public static final int FLOATS_PER_SEGMENT = 6;
+    public static final int SEGMENT_BYTES = FLOATS_PER_SEGMENT * Float.BYTES;
+
+    public static final int DEFAULT_PAGE_SEGMENTS = 16 * 1024;
+
+    private final int pageSegments;
+    private final List<ByteBuffer> pages = new ArrayList<>();
+
+    // a released page kept for reuse, so undoing and redrawing around a page boundary does not thrash.
+    private ByteBuffer spare;
+
+    private long size;
+
+    public SegmentStore() {
+        this(DEFAULT_PAGE_SEGMENTS);
+    }
+
+    public SegmentStore(int pageSegments) {
+        if (pageSegments <= 0) {
+            throw new IllegalArgumentException("pageSegments must be positive: " + pageSegments);
+        }
+        this.pageSegments = pageSegments;
+    }
+
+    public void add(float x0, float y0, float z0, float x1, float y1, float z1) {
+        int offset = (int) (size % pageSegments) * SEGMENT_BYTES;
+        if (offset == 0 && size / pageSegments == pages.size()) {
+            pages.add(newPage());
+        }
+        ByteBuffer page = pages.get(pages.size() - 1);
+        page.putFloat(offset, x0);
+        page.putFloat(offset + 4, y0);
+        page.putFloat(offset + 8, z0);
+        page.putFloat(offset + 12, x1);
+        page.putFloat(offset + 16, y1);
+        page.putFloat(offset + 20, z1);
+        size++;
+    }
+
+    /**
+     * Append a copy of all the segments of another store, a page at a time: drawings made apart, like those of the
+     * turtles told together, each drawing on its own thread, are merged without going through {@link #add}.
+     */
+    public void append(SegmentStore other) {
+        for (int i = 0; i < other.getPageCount(); i++) {
+            ByteBuffer source = other.getPage(i);
+            while (source.hasRemaining()) {
+                int offset = (int) (size % pageSegments) * SEGMENT_BYTES;
+                if (offset == 0 && size / pageSegments == pages.size()) {
+                    pages.add(newPage());
+                }
+                ByteBuffer page = pages.get(pages.size() - 1).duplicate();
+                page.clear();
+                page.position(offset);
+                int bytes = Math.min(page.remaining(), source.remaining());
+                ByteBuffer chunk = source.duplicate();
+                chunk.limit(chunk.position() + bytes);
+                page.put(chunk);
+                source.position(source.position() + bytes);
+                size += bytes / SEGMENT_BYTES;
+            }
+        }
+    }
+
+    /**
+     * Copy a segment in the first floats of the given array.
+     */
+    public void get(long index, float[] segment) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("segment " + index + " of " + size);
+        }
+        ByteBuffer page = pages.get((int) (index / pageSegments));
+        int offset = (int) (index % pageSegments) * SEGMENT_BYTES;
+        for (int i = 0; i < FLOATS_PER_SEGMENT; i++) {
+            segment[i] = page.getFloat(offset + i * Float.BYTES);
+        }
+    }
+
+    /**
+     * @return the number of segments.
+     */
+    public long size() {
+        return size;
+    }
+
+    public int getPageSegments() {
+        return pageSegments;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return a view of the used part of a page, positioned at 0, in native order.
+     */
+    public ByteBuffer getPage(int index) {
+        ByteBuffer view = pages.get(index).duplicate().order(ByteOrder.nativeOrder());
+        view.limit(getPageSize(index) * SEGMENT_BYTES);
+        return view;
+    }
+
+    /**
+     * @return the number of segments in a page.
+     */
+    public int getPageSize(int index) {
+        if (index < 0 || index >= pages.size()) {
+            throw new IndexOutOfBoundsException("page " + index + " of " + pages.size());
+        }
+        return (int) Math.min(pageSegments, size - (long) index * pageSegments);
+    }
+
+    /**
+     * Keep only the first segments, releasing the pages no longer used.
+     */
+    public void truncate(long newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IllegalArgumentException("cannot truncate " + size + " segments to " + newSize);
+        }
+        size = newSize;
+        int usedPages = (int) ((newSize + pageSegments - 1) / pageSegments);
+        while (pages.size() > usedPages) {
+            release(pages.remove(pages.size() - 1));
+        }
+    }
+
+    /**
+     * Remove all segments, releasing all pages.
+     */
+    public void clear() {
+        truncate(0);
+    }
+
+    @Override
+    public void close() {
+        clear();
+        if (spare != null) {
+            DirectBuffers.release(spare);
+            spare = null;
+        }
+    }
+
+    private ByteBuffer newPage() {
+        if (spare != null) {
+            ByteBuffer page = spare;
+            spare = null;
+            return page;
+        }
+        return ByteBuffer.allocateDirect(pageSegments * SEGMENT_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private void release(ByteBuffer page) {
+        if (spare == null) {
+            spare = page;
+        } else {
+            DirectBuffers.release(page);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package logo3d.language.drawing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds thick strokes out of line segments: a tube, or a flat ribbon facing up, around each segment.
+ *
+ * The vertex, normal and index buffers are allocated once at their final size, then filled in parallel on a
+ * fork-join pool: each task writes the range of segments it was given at its own place in the buffers, so there
+ * is neither copy nor synchronization. Buffers are direct and in native order, ready to be handed to the GPU.
+ * Thread-safe, builds can run concurrently.
+ */
+public class StrokeMeshBuilder {
+
+    public enum Profile {
+        TUBE, RIBBON
+    }
+
+    // below that, a range of segments is built by a single task.
+    private static final int DEFAULT_CHUNK_SEGMENTS = 2048;
+
+    private final Profile profile;
+    private final float radius;
+    private final int sides;
+    private final ForkJoinPool pool;
+    private final int chunkSegments;
+
+    /**
+     * @param radius radius of a tube, half the width of a ribbon.
+     * @param sides  number of sides of a tube, at least 3; ignored for a ribbon.
+     */
+    public StrokeMeshBuilder(Profile profile, float radius, int sides) {
+        this(profile, radius, sides, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SEGMENTS);
+    }
+
+    StrokeMeshBuilder(Profile profile, float radius, int sides, ForkJoinPool pool, int chunkSegments) {
+        if (profile == Profile.TUBE && sides < 3) {
+            throw new IllegalArgumentException("a tube has at least 3 sides: " + sides);
+        }
+        if (radius <= 0f) {
+            throw new IllegalArgumentException("radius must be positive: " + radius);
+        }
+        this.profile = profile;
+        this.radius = radius;
+        this.sides = profile == Profile.TUBE ? sides : 2;
+        this.pool = pool;
+        this.chunkSegments = chunkSegments;
+    }
+
+    public int getVerticesPerSegment() {
+        return 2 * sides;
+    }
+
+    public int getIndicesPerSegment() {
+        return profile == Profile.TUBE ? 6 * sides : 6;
+    }
+
+    /**
+     * Build the strokes of segments, {@link SegmentStore#FLOATS_PER_SEGMENT} floats each from the position of the
+     * buffer to its limit. The buffer is only read, and must not change during the build.
+     */
+    public StrokeMesh build(FloatBuffer segments) {
+        FloatBuffer source = segments.slice();
+        int segmentCount = source.remaining() / SegmentStore.FLOATS_PER_SEGMENT;
+        StrokeMesh mesh = new StrokeMesh(segmentCount,
+                newBuffer(segmentCount * getVerticesPerSegment() * 3 * Float.BYTES),
+                newBuffer(segmentCount * getVerticesPerSegment() * 3 * Float.BYTES),
+                newBuffer(segmentCount * getIndicesPerSegment() * Integer.BYTES));
+        if (segmentCount > 0) {
+            pool.invoke(new Chunk(source, mesh, 0, segmentCount));
+        }
+        return mesh;
+    }
+
+    /**
+     * Buffers of the strokes of some segments, positioned at 0 and limited to their content.
+     */
+    public static class StrokeMesh {
+        private final int segmentCount;
+        // the direct buffers behind the views, to release them.
+        private final ByteBuffer[] buffers;
+        private final FloatBuffer positions;
+        private final FloatBuffer normals;
+        private final IntBuffer indices;
+
+        StrokeMesh(int segmentCount, ByteBuffer positions, ByteBuffer normals, ByteBuffer indices) {
+            this.segmentCount = segmentCount;
+            this.buffers = new ByteBuffer[]{positions, normals, indices};
+            this.positions = positions.asFloatBuffer();
+            this.normals = normals.asFloatBuffer();
+            this.indices = indices.asIntBuffer();
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        public FloatBuffer getPositions() {
+            return positions;
+        }
+
+        public FloatBuffer getNormals() {
+            return normals;
+        }
+
+        public IntBuffer getIndices() {
+            return indices;
+        }
+
+        /**
+         * Free the memory of the buffers now, instead of when the mesh is garbage collected. Neither the mesh nor
+         * its buffers must be used afterwards.
+         */
+        public void release() {
+            for (ByteBuffer buffer : buffers) {
+                DirectBuffers.release(buffer);
+            }
+        }
+    }
+
+    private class Chunk extends RecursiveAction {
+        private final FloatBuffer source;
+        private final StrokeMesh mesh;
+        private final int from;
+        private final int to;
+
+        Chunk(FloatBuffer source, StrokeMesh mesh, int from, int to) {
+            this.source = source;
+            this.mesh = mesh;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkSegments) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Chunk(source, mesh, from, middle), new Chunk(source, mesh, middle, to));
+                return;
+            }
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            float[] frame = new float[9];
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < segment.length; j++) {
+                    segment[j] = source.get(i * SegmentStore.FLOATS_PER_SEGMENT + j);
+                }
+                frame(segment, frame);
+                if (profile == Profile.TUBE) {
+                    tube(i, segment, frame);
+                } else {
+                    ribbon(i, segment, frame);
+                }
+            }
+        }
+
+        private void tube(int index, float[] segment, float[] frame) {
+            int firstVertex = index * getVerticesPerSegment();
+            for (int k = 0; k < sides; k++) {
+                double angle = 2 * Math.PI * k / sides;
+                float cos = (float) Math.cos(angle);
+                float sin = (float) Math.sin(angle);
+                // around the segment, in the plane of the side and up axes of the frame.
+                float nx = cos * frame[3] + sin * frame[6];
+                float ny = cos * frame[4] + sin * frame[7];
+                float nz = cos * frame[5] + sin * frame[8];
+                vertex(firstVertex + k, segment, 0, nx, ny, nz, nx, ny, nz);
+                vertex(firstVertex + sides + k, segment, 3, nx, ny, nz, nx, ny, nz);
+            }
+            int index0 = index * getIndicesPerSegment();
+            for (int k = 0; k < sides; k++) {
+                int a = firstVertex + k;
+                int b = firstVertex + (k + 1) % sides;
+                int c = a + sides;
+                int d = b + sides;
+                triangle(index0 + 6 * k, a, c, b);
+                triangle(index0 + 6 * k + 3, b, c, d);
+            }
+        }
+
+        private void ribbon(int index, float[] segment, float[] frame) {
+            int firstVertex = index * getVerticesPerSegment();
+            // facing the up axis of the frame, as wide as the side axis.
+            float nx = frame[6];
+            float ny = frame[7];
+            float nz = frame[8];
+            vertex(firstVertex, segment, 0, frame[3], frame[4], frame[5], nx, ny, nz);
+            vertex(firstVertex + 1, segment, 0, -frame[3], -frame[4], -frame[5], nx, ny, nz);
+            vertex(firstVertex + 2, segment, 3, frame[3], frame[4], frame[5], nx, ny, nz);
+            vertex(firstVertex + 3, segment, 3, -frame[3], -frame[4], -frame[5], nx, ny, nz);
+            int index0 = index * getIndicesPerSegment();
+            triangle(index0, firstVertex, firstVertex + 2, firstVertex + 1);
+            triangle(index0 + 3, firstVertex + 1, firstVertex + 2, firstVertex + 3);
+        }
+
+        /**
+         * Write a vertex at an end of the segment, moved by radius along the given unit offset.
+         */
+        private void vertex(int vertex, float[] segment, int end, float ox, float oy, float oz,
+                            float nx, float ny, float nz) {
+            int offset = vertex * 3;
+            mesh.positions.put(offset, segment[end] + radius * ox);
+            mesh.positions.put(offset + 1, segment[end + 1] + radius * oy);
+            mesh.positions.put(offset + 2, segment[end + 2] + radius * oz);
+            mesh.normals.put(offset, nx);
+            mesh.normals.put(offset + 1, ny);
+            mesh.normals.put(offset + 2, nz);
+        }
+
+        private void triangle(int offset, int a, int b, int c) {
+            mesh.indices.put(offset, a);
+            mesh.indices.put(offset + 1, b);
+            mesh.indices.put(offset + 2, c);
+        }
+    }
+
+    /**
+     * Compute an orthonormal frame of the segment: its direction, a side axis in the horizontal plane when possible,
+     * and an up axis. Zero-length segments get the frame of a segment heading to -Z.
+     */
+    static void frame(float[] segment, float[] frame) {
+        float dx = segment[3] - segment[0];
+        float dy = segment[4] - segment[1];
+        float dz = segment[5] - segment[2];
+        float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < 1e-6f) {
+            dx = 0f;
+            dy = 0f;
+            dz = -1f;
+        } else {
+            dx /= length;
+            dy /= length;
+            dz /= length;
+        }
+        // side = direction x Y, or x X for a vertical segment.
+        float sx = -dz;
+        float sy = 0f;
+        float sz = dx;
+        float sideLength = (float) Math.sqrt(sx * sx + sz * sz);
+        if (sideLength < 1e-6f) {
+            sx = 0f;
+            sy = dz;
+            sz = -dy;
+            sideLength = (float) Math.sqrt(sy * sy + sz * sz);
+        }
+        sx /= sideLength;
+        sy /= sideLength;
+        sz /= sideLength;
+        // up = side x direction
+        frame[0] = dx;
+        frame[1] = dy;
+        frame[2] = dz;
+        frame[3] = sx;
+        frame[4] = sy;
+        frame[5] = sz;
+        frame[6] = sy * dz - sz * dy;
+        frame[7] = sz * dx - sx * dz;
+        frame[8] = sx * dy - sy * dx;
+    }
+
+    private static ByteBuffer newBuffer(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
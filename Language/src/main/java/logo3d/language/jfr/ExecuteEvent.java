@@ -0,0 +1,32 @@
+package logo3d.language.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Execution of the parsed source code given to Program.interpret.
+ */
+@Name("logo3d.Execute")
+@Label("Execute")
+@Category({"Logo3d", "Interpreter"})
+@Description("Execution of a script, or of a batch of lines of a script, once parsed")
+@Enabled(false)
+@StackTrace(false)
+public class ExecuteEvent extends Event {
+
+    @Label("First Line")
+    public int firstLine;
+
+    @Label("Commands")
+    @Description("Logo commands executed, loop iterations included")
+    public long commands;
+
+    @Label("Failed")
+    @Description("Whether the execution stopped on an error or a limit")
+    public boolean failed;
+}
@@ -0,0 +1,38 @@
+package logo3d.language.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Execution of a whole 'repeat' or 'for' loop.
+ */
+@Name("logo3d.Loop")
+@Label("Loop")
+@Category({"Logo3d", "Interpreter"})
+@Description("Execution of a whole repeat or for loop")
+@Enabled(false)
+@StackTrace(false)
+public class LoopEvent extends Event {
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Line")
+    public int line;
+
+    @Label("Iterations")
+    public long iterations;
+
+    @Label("Skipped Iterations")
+    @Description("Iterations not run since they would only draw the same lines again")
+    public long skipped;
+
+    @Label("Commands")
+    @Description("Logo commands executed by the loop, nested loops included")
+    public long commands;
+}
@@ -0,0 +1,30 @@
+package logo3d.language.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Parsing of the source code given to Program.interpret.
+ */
+@Name("logo3d.Parse")
+@Label("Parse")
+@Category({"Logo3d", "Interpreter"})
+@Description("Parsing of a script, or of a batch of lines of a script")
+@Enabled(false)
+@StackTrace(false)
+public class ParseEvent extends Event {
+
+    @Label("Characters")
+    public int characters;
+
+    @Label("First Line")
+    public int firstLine;
+
+    @Label("Syntax Errors")
+    public int syntaxErrors;
+}
@@ -0,0 +1,39 @@
+package logo3d.language.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Invocation of a Logo procedure.
+ */
+@Name("logo3d.ProcedureCall")
+@Label("Procedure Call")
+@Category({"Logo3d", "Interpreter"})
+@Description("Invocation of a Logo procedure, nested calls included")
+@Enabled(false)
+@StackTrace(false)
+public class ProcedureCallEvent extends Event {
+
+    @Label("Procedure")
+    public String procedure;
+
+    @Label("Line")
+    public int line;
+
+    @Label("Commands")
+    @Description("Logo commands executed by the call, counted but not executed again for a recorded shape")
+    public long commands;
+
+    @Label("Shape Reused")
+    @Description("Whether the call drew a shape recorded by a previous call with the same arguments")
+    public boolean shapeReused;
+
+    @Label("Segments")
+    @Description("Segments of the shape drawn, for a procedure that only moves the turtle")
+    public int segments;
+}
@@ -0,0 +1,117 @@
+package logo3d.language;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class CoalescingTurtleActionsTest {
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    TurtleActionCallbacks turtleControl;
+
+    Program program;
+
+    // merges segments too.
+    Program merging;
+
+    @Before
+    public void setUp() throws Exception {
+        program = new Program(new CoalescingTurtleActions(turtleControl));
+        CoalescingTurtleActions mergingActions = new CoalescingTurtleActions(turtleControl);
+        mergingActions.setMergingSegments(true);
+        merging = new Program(mergingActions);
+    }
+
+    @Test
+    public void test_collinear_moves_are_merged() throws Exception {
+
+        merging.interpret("fd 1 fd 1 fd 1 rt 90 bk 2 bk 3");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).forward(3f);
+        inOrder.verify(turtleControl).turnRight(90f);
+        inOrder.verify(turtleControl).backward(5f);
+        inOrder.verify(turtleControl).flush();
+        inOrder.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void test_opposite_moves_are_not_merged_with_the_pen_down() throws Exception {
+
+        merging.interpret("fd 5 bk 3");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).forward(5f);
+        inOrder.verify(turtleControl).backward(3f);
+    }
+
+    @Test
+    public void test_opposite_moves_are_merged_with_the_pen_up() throws Exception {
+
+        program.interpret("pu fd 5 bk 3 pd fd 1");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).penUp();
+        inOrder.verify(turtleControl).forward(2f);
+        inOrder.verify(turtleControl).penDown();
+        inOrder.verify(turtleControl).forward(1f);
+    }
+
+    @Test
+    public void test_turns_are_merged_and_normalized() throws Exception {
+
+        merging.interpret("rt 10 lt 30 fd 1 rt 300 rt 60 fd 1 rt 350");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).turnLeft(20f);
+        // a net 360 degree turn is dropped, and the moves around it are merged.
+        inOrder.verify(turtleControl).forward(2f);
+        inOrder.verify(turtleControl).turnLeft(10f);
+        verify(turtleControl, never()).turnRight(anyFloat());
+    }
+
+    @Test
+    public void test_segments_are_not_merged_by_default() throws Exception {
+
+        program.interpret("fd 1 fd 1 undo 1");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl, Mockito.times(2)).forward(1f);
+        // undoes the second move only.
+        inOrder.verify(turtleControl).undo(1);
+        verify(turtleControl, never()).forward(2f);
+    }
+
+    @Test
+    public void test_zero_length_moves_are_dropped() throws Exception {
+
+        program.interpret("fd 0 bk 0 rt 0");
+
+        verify(turtleControl, never()).forward(anyFloat());
+        verify(turtleControl, never()).backward(anyFloat());
+        verify(turtleControl, never()).turnRight(anyFloat());
+    }
+
+    @Test
+    public void test_pending_commands_are_flushed_before_print() throws Exception {
+
+        merging.interpret("fd 1 fd 1\nprint 1\nfd 1");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).forward(2f);
+        inOrder.verify(turtleControl).print("1.0");
+        inOrder.verify(turtleControl).forward(1f);
+    }
+}
@@ -0,0 +1,165 @@
+package logo3d.language;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Mockito.verify;
+
+public class LibraryLoaderTest {
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    TurtleActionCallbacks turtleControl;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    // line, then message, of each syntax error reported.
+    private final List<String> syntaxErrors = new ArrayList<>();
+
+    private Program program;
+
+    @Before
+    public void setUp() {
+        // shapes of motion-only procedures are drawn move by move.
+        Mockito.doAnswer(invocation -> {
+            ((Shape) invocation.getArguments()[0]).replay(turtleControl);
+            return null;
+        }).when(turtleControl).drawShape(Mockito.any(Shape.class));
+        program = new Program(turtleControl, new Program.SyntaxErrorHandler() {
+            @Override
+            public void onSyntaxError(String msg) {
+                syntaxErrors.add(msg);
+            }
+
+            @Override
+            public void onSyntaxError(int line, int column, String msg) {
+                syntaxErrors.add(line + " " + msg);
+            }
+        });
+    }
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void test_chunks_are_linked_in_script_order() throws Exception {
+        String script = "fd 1\n" +
+                "to square :side\n" +
+                "repeat 4 [fd :side rt 90]\n" +
+                "end\n" +
+                "\n" +
+                "square 10\n" +
+                "to turn :angle\n" +
+                "rt :angle\n" +
+                "end\n" +
+                "turn 45 fd 2\n";
+
+        int procedures = new LibraryLoader(program, pool).load(script);
+
+        assertThat(procedures).isEqualTo(2);
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).forward(1f);
+        inOrder.verify(turtleControl, Mockito.times(4)).forward(10f);
+        inOrder.verify(turtleControl).turnRight(45f);
+        inOrder.verify(turtleControl).forward(2f);
+        assertThat(syntaxErrors).isEmpty();
+    }
+
+    @Test
+    public void test_split_at_top_level_declarations() throws Exception {
+        String script = "fd 1\n" +
+                "\n" +
+                "to a\n" +
+                "fd 1\n" +
+                "end\n" +
+                "\n" +
+                "to b\n" +
+                "a\n" +
+                "end";
+
+        List<LibraryLoader.Chunk> chunks = new LibraryLoader(program, pool).split(script);
+
+        assertThat(chunks).hasSize(3);
+        assertThat(chunks.get(0).procedure).isFalse();
+        assertThat(chunks.get(0).firstLine).isEqualTo(1);
+        assertThat(chunks.get(1).source).isEqualTo("to a\nfd 1\nend\n");
+        assertThat(chunks.get(1).firstLine).isEqualTo(3);
+        assertThat(chunks.get(2).source).isEqualTo("to b\na\nend");
+        assertThat(chunks.get(2).firstLine).isEqualTo(7);
+    }
+
+    @Test
+    public void test_syntax_errors_are_reported_at_their_script_line_in_order() throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            // 3 lines each, the body of every tenth one is broken.
+            script.append("to p").append(i).append('\n')
+                    .append(i % 10 == 0 ? "fd [\n" : "fd 1\n")
+                    .append("end\n");
+        }
+
+        new LibraryLoader(program, pool).load(script.toString());
+
+        assertThat(syntaxErrors).hasSize(5);
+        for (int i = 0; i < 5; i++) {
+            assertThat(syntaxErrors.get(i)).startsWith((i * 30 + 2) + " ");
+        }
+    }
+
+    @Test
+    public void test_lazy_bodies_are_parsed_on_first_invocation() throws Exception {
+        String script = "to broken :n\n" +
+                "fd :n ]\n" +
+                "end\n" +
+                "to square :n\n" +
+                "repeat 4 [fd :n rt 90]\n" +
+                "end\n";
+        LibraryLoader loader = new LibraryLoader(program, pool);
+        loader.setLazy(true);
+
+        int procedures = loader.load(script);
+
+        assertThat(procedures).isEqualTo(2);
+        assertThat(syntaxErrors).isEmpty();
+
+        program.interpret("square 5");
+        verify(turtleControl, Mockito.times(4)).forward(5f);
+        assertThat(syntaxErrors).isEmpty();
+
+        program.interpret("broken 1");
+        assertThat(syntaxErrors).isNotEmpty();
+        assertThat(syntaxErrors.get(0)).startsWith("2 ");
+    }
+
+    @Test
+    public void test_many_procedures() throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            script.append("to p").append(i).append(" :n\nfd :n\nend\n");
+        }
+        script.append("p499 3\n");
+
+        int procedures = new LibraryLoader(program, pool).load(script.toString());
+
+        assertThat(procedures).isEqualTo(500);
+        verify(turtleControl).forward(3f);
+        verify(turtleControl, Mockito.times(1)).forward(anyFloat());
+    }
+}
@@ -0,0 +1,107 @@
+package logo3d.language;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogoParsersTest {
+
+    @Test
+    public void test_parser_is_reused_by_the_same_thread() throws Exception {
+        LogoParser parser = LogoParsers.parser();
+        LogoParsers.parse("fd 10\n", new BaseErrorListener());
+
+        assertThat(LogoParsers.parser()).isSameAs(parser);
+    }
+
+    @Test
+    public void test_each_thread_has_its_own_parser() throws Exception {
+        AtomicReference<LogoParser> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> other.set(LogoParsers.parser()));
+        thread.start();
+        thread.join();
+
+        assertThat(other.get()).isNotNull();
+        assertThat(other.get()).isNotSameAs(LogoParsers.parser());
+    }
+
+    @Test
+    public void test_parse_after_a_syntax_error() throws Exception {
+        List<String> errors = new ArrayList<>();
+        BaseErrorListener listener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                errors.add(msg);
+            }
+        };
+
+        LogoParsers.parse("fd [\n", listener);
+        assertThat(errors).isNotEmpty();
+
+        errors.clear();
+        LogoParser.ProgContext prog = LogoParsers.parse("fd 10 rt 90\n", listener);
+        assertThat(errors).isEmpty();
+        assertThat(prog.getText()).isEqualTo("fd10rt90\n");
+    }
+
+    @Test
+    public void test_pool_reuses_parsers_across_threads() throws Exception {
+        LogoParsers.Pool pool = (LogoParsers.Pool) LogoParsers.pool(2);
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // a fresh thread each time, like a virtual thread per request.
+            Thread thread = new Thread(() -> pool.parse("fd 10\n", new BaseErrorListener() {
+                @Override
+                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                    errors.add(msg);
+                }
+            }));
+            thread.start();
+            thread.join();
+        }
+
+        assertThat(errors).isEmpty();
+        assertThat(pool.getCreated()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_pool_is_bounded() throws Exception {
+        LogoParsers.Pool pool = (LogoParsers.Pool) LogoParsers.pool(2);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 200; j++) {
+                    pool.parse("repeat 4 [fd 10 rt 90]\n", new BaseErrorListener());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(pool.getCreated()).isBetween(1, 2);
+    }
+
+    @Test
+    public void test_warm_up_corpus_is_valid() throws Exception {
+        // the corpus must not raise syntax errors, otherwise it warms up the error recovery instead.
+        List<String> errors = new ArrayList<>();
+        LogoParsers.parse(LogoParsers.warmUpCorpus(), new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                errors.add(line + ":" + charPositionInLine + " " + msg);
+            }
+        });
+
+        assertThat(errors).isEmpty();
+    }
+}
@@ -0,0 +1,89 @@
+package logo3d.language;
+
+import logo3d.language.drawing.HeadlessTurtle;
+import logo3d.language.drawing.SegmentStore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogoProfilerTest {
+
+    private final SegmentStore segments = new SegmentStore(1024);
+    private final Program program = new Program(new HeadlessTurtle(segments));
+    private final LogoProfiler profiler = new LogoProfiler();
+
+    @After
+    public void tearDown() throws Exception {
+        profiler.close();
+        segments.close();
+    }
+
+    @Test
+    public void test_commands_are_counted_by_position_and_call_stack() throws Exception {
+        program.setProfiler(profiler);
+
+        program.interpret("fd 1\n to dash\n pu fd 1 pd fd 1\n end\n repeat 3 [dash]");
+        program.interpret("rt 90", 10);
+
+        StringWriter out = new StringWriter();
+        profiler.writeCollapsedCommands(out);
+        assertThat(out.toString().split("\n")).containsOnly(
+                "program 1:1 1",
+                "program 10:1 1",
+                "program 5:12;dash 3:2 3",
+                "program 5:12;dash 3:5 3",
+                "program 5:12;dash 3:10 3",
+                "program 5:12;dash 3:13 3");
+    }
+
+    @Test
+    public void test_procedure_lines_are_those_of_its_declaration() throws Exception {
+        program.setProfiler(profiler);
+
+        program.interpret("fd 1\n to dash\n pu fd 1 pd\n end", 20);
+        program.interpret("dash", 40);
+
+        StringWriter out = new StringWriter();
+        profiler.writeCollapsedCommands(out);
+        assertThat(out.toString().split("\n")).containsOnly(
+                "program 20:1 1",
+                "program 40:1;dash 22:2 1",
+                "program 40:1;dash 22:5 1",
+                "program 40:1;dash 22:10 1");
+    }
+
+    @Test
+    public void test_shapes_and_periods_are_run_while_profiling() throws Exception {
+        program.setProfiler(profiler);
+        program.setSkippingPeriods(true);
+
+        // a shape otherwise reused, in a loop otherwise skipped after 4 iterations.
+        program.interpret("to side\n fd 1 rt 90\n end\n repeat 12 [side]");
+
+        StringWriter out = new StringWriter();
+        profiler.writeCollapsedCommands(out);
+        assertThat(out.toString().split("\n")).containsOnly(
+                "program 4:13;side 2:2 12",
+                "program 4:13;side 2:7 12");
+        assertThat(segments.size()).isEqualTo(12);
+    }
+
+    @Test
+    public void test_time_is_sampled() throws Exception {
+        program.setProfiler(profiler);
+        profiler.start();
+
+        for (int i = 0; i < 1000 && profiler.getSampleCount() == 0; i++) {
+            program.interpret("pu\n repeat 9999 [fd 1 rt 1]");
+        }
+        profiler.stop();
+
+        assertThat(profiler.getSampleCount()).isGreaterThan(0);
+        StringWriter out = new StringWriter();
+        profiler.writeCollapsedSamples(out);
+        assertThat(out.toString()).startsWith("program 2:");
+    }
+}
@@ -0,0 +1,110 @@
+package logo3d.language;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputBufferTest {
+
+    // what the sink received: 'text' or '!text' for an error, followed by ' xN' when repeated.
+    private final List<String> lines = new ArrayList<>();
+    private long dropped;
+
+    private final OutputBuffer.Sink sink = new OutputBuffer.Sink() {
+        @Override
+        public void line(String text, boolean error, int repeats) {
+            lines.add((error ? "!" : "") + text + (repeats > 1 ? " x" + repeats : ""));
+        }
+
+        @Override
+        public void dropped(long lines) {
+            dropped += lines;
+        }
+    };
+
+    @Test
+    public void test_lines_are_drained_in_order() throws Exception {
+        OutputBuffer output = new OutputBuffer(8, OutputBuffer.Overflow.DROP);
+        output.print("a");
+        output.error("b");
+        output.print("c");
+
+        assertThat(output.drain(sink)).isEqualTo(3);
+        assertThat(lines).containsExactly("a", "!b", "c");
+        assertThat(output.drain(sink)).isEqualTo(0);
+    }
+
+    @Test
+    public void test_repeated_lines_are_collapsed() throws Exception {
+        OutputBuffer output = new OutputBuffer(8, OutputBuffer.Overflow.DROP);
+        for (int i = 0; i < 1000; i++) {
+            output.print("10.0");
+        }
+        output.error("10.0");
+        output.print("10.0");
+
+        output.drain(sink);
+
+        assertThat(lines).containsExactly("10.0 x1000", "!10.0", "10.0");
+    }
+
+    @Test
+    public void test_lines_beyond_capacity_are_dropped_and_counted() throws Exception {
+        OutputBuffer output = new OutputBuffer(4, OutputBuffer.Overflow.DROP);
+        for (int i = 0; i < 10; i++) {
+            output.print(Integer.toString(i));
+        }
+        // not a repeat of the last line kept: lines were dropped in between.
+        output.print("3");
+
+        output.drain(sink);
+
+        assertThat(lines).containsExactly("0", "1", "2", "3");
+        assertThat(dropped).isEqualTo(7);
+        assertThat(output.getDroppedLines()).isEqualTo(7);
+
+        // room again.
+        output.print("10");
+        output.drain(sink);
+        assertThat(lines).endsWith("10");
+        assertThat(dropped).isEqualTo(7);
+    }
+
+    @Test
+    public void test_repeats_are_collapsed_when_full_if_nothing_was_dropped() throws Exception {
+        OutputBuffer output = new OutputBuffer(2, OutputBuffer.Overflow.DROP);
+        output.print("a");
+        output.print("b");
+        output.print("b");
+
+        output.drain(sink);
+
+        assertThat(lines).containsExactly("a", "b x2");
+        assertThat(dropped).isEqualTo(0);
+    }
+
+    @Test
+    public void test_writers_wait_for_a_drain_when_blocking() throws Exception {
+        OutputBuffer output = new OutputBuffer(2, OutputBuffer.Overflow.BLOCK);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                output.print(Integer.toString(i));
+            }
+        });
+        writer.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((writer.isAlive() || lines.size() < 100) && System.nanoTime() < deadline) {
+            output.drain(sink);
+            Thread.sleep(1);
+        }
+
+        assertThat(lines).hasSize(100);
+        assertThat(lines.get(99)).isEqualTo("99");
+        assertThat(dropped).isEqualTo(0);
+    }
+}
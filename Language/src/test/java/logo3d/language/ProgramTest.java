@@ -1,8 +1,11 @@
 package logo3d.language;
 
+import logo3d.language.drawing.HeadlessTurtle;
+import logo3d.language.drawing.SegmentStore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -11,7 +14,11 @@ import org.mockito.junit.MockitoRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
 import static org.mockito.Mockito.verify;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -223,4 +230,253 @@ public class ProgramTest {
         assertThat(captor.getValue()).isEqualTo("1.0");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_pen_and_screen_commands() throws Exception {
+
+        program.interpret("pu fd 1 pd cs home");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).penUp();
+        inOrder.verify(turtleControl).forward(1f);
+        inOrder.verify(turtleControl).penDown();
+        inOrder.verify(turtleControl).clearScreen();
+        inOrder.verify(turtleControl).home();
+    }
+
+    @Test
+    public void test_setxy() throws Exception {
+
+        program.interpret("setxy 10 -20");
+
+        verify(turtleControl).setXY(10f, -20f);
+    }
+
+    @Test
+    public void test_undo() throws Exception {
+
+        program.interpret("undo\n undo 2 * 5");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).undo(1);
+        inOrder.verify(turtleControl).undo(10);
+    }
+
+    @Test
+    public void test_repeat() throws Exception {
+
+        program.interpret("repeat 4 [fd 10 rt 90]");
+
+        verify(turtleControl, Mockito.times(4)).forward(10f);
+        verify(turtleControl, Mockito.times(4)).turnRight(90f);
+    }
+
+    @Test
+    public void test_procedure_with_parameters() throws Exception {
+
+        program.interpret("make \"size 1\n to walk :size :turn\n fd :size rt :turn\n print :size\n end\n walk 10 90");
+
+        InOrder inOrder = Mockito.inOrder(turtleControl);
+        inOrder.verify(turtleControl).forward(10f);
+        inOrder.verify(turtleControl).turnRight(90f);
+        inOrder.verify(turtleControl).print("10.0");
+        // the global variable is back.
+        program.interpret("fd :size");
+        inOrder.verify(turtleControl).forward(1f);
+    }
+
+    @Test
+    public void test_motion_only_procedure_is_recorded_once() throws Exception {
+        ArgumentCaptor<Shape> captor = ArgumentCaptor.forClass(Shape.class);
+
+        program.interpret("to square :size\n repeat 4 [fd :size rt 90]\n end\n square 10 fd 20 square 10 square 5");
+
+        verify(turtleControl, Mockito.times(3)).drawShape(captor.capture());
+        verify(turtleControl).forward(20f);
+        Shape first = captor.getAllValues().get(0);
+        assertThat(captor.getAllValues().get(1)).isSameAs(first);
+        assertThat(captor.getAllValues().get(2)).isNotSameAs(first);
+        assertThat(first.getSegmentCount()).isEqualTo(4);
+        // commands are counted for every invocation.
+        assertThat(program.getExecutedCommands()).isEqualTo(3 * (1 + 9) + 1);
+    }
+
+    @Test
+    public void test_repeat_skips_whole_periods() throws Exception {
+        program.setSkippingPeriods(true);
+
+        program.interpret("repeat 10000 [fd 1 rt 36]");
+
+        // back at start after 10 iterations, all the others are periods.
+        verify(turtleControl, Mockito.times(10)).forward(1f);
+        verify(turtleControl, Mockito.times(10)).turnRight(36f);
+        assertThat(program.getExecutedCommands()).isEqualTo(1 + 10000 * 2);
+    }
+
+    @Test
+    public void test_skipped_periods_keep_the_final_state() throws Exception {
+        try (SegmentStore skippedSegments = new SegmentStore(1024); SegmentStore allSegments = new SegmentStore(1024)) {
+            HeadlessTurtle skipped = new HeadlessTurtle(skippedSegments);
+            HeadlessTurtle all = new HeadlessTurtle(allSegments);
+            Program skipping = new Program(skipped);
+            skipping.setSkippingPeriods(true);
+            String source = "repeat 3 [fd 2 lt 45]\nrepeat 27 [fd 1 rt 90]\nfor [i 1 30 1] [repeat 3 [fd 5 rt 120] bk 1]";
+
+            skipping.interpret(source);
+            new Program(all).interpret(source);
+
+            assertThat(skipped.getX()).isEqualTo(all.getX(), offset(1e-4f));
+            assertThat(skipped.getZ()).isEqualTo(all.getZ(), offset(1e-4f));
+            assertThat(skipped.getHeading()).isEqualTo(all.getHeading(), offset(1e-3f));
+            // 3, then 4 + 3 of the square, then 3 + 1 per iteration of the for loop, never back at start.
+            assertThat(skippedSegments.size()).isEqualTo(3 + 7 + 30 * 4);
+            assertThat(allSegments.size()).isEqualTo(3 + 27 + 30 * 4);
+        }
+    }
+
+    @Test
+    public void test_almost_closed_loop_is_not_skipped() throws Exception {
+        try (SegmentStore skippedSegments = new SegmentStore(1024); SegmentStore allSegments = new SegmentStore(1024)) {
+            HeadlessTurtle skipped = new HeadlessTurtle(skippedSegments);
+            HeadlessTurtle all = new HeadlessTurtle(allSegments);
+            Program skipping = new Program(skipped);
+            skipping.setSkippingPeriods(true);
+            // 1 short of a square: small next to the distance travelled, not once repeated 1000 times.
+            String source = "repeat 1000 [fd 1000000 rt 90 fd 1000000 rt 90 fd 1000000 rt 90 fd 999999 rt 90]";
+
+            skipping.interpret(source);
+            new Program(all).interpret(source);
+
+            assertThat(skipped.getX()).isEqualTo(all.getX());
+            assertThat(skipped.getZ()).isEqualTo(all.getZ());
+            assertThat(Math.abs(all.getX()) + Math.abs(all.getZ())).isEqualTo(1000f, offset(1f));
+            assertThat(skippedSegments.size()).isEqualTo(4000);
+        }
+    }
+
+    @Test
+    public void test_undo_after_a_loop_removes_its_last_segments() throws Exception {
+        try (SegmentStore segments = new SegmentStore(1024)) {
+            Program program = new Program(new HeadlessTurtle(segments));
+
+            // periods are not skipped by default: the retraced sides are undone, the square stays.
+            program.interpret("fd 5 repeat 1000 [fd 10 rt 90] undo 8");
+
+            assertThat(segments.size()).isEqualTo(1 + 1000 - 8);
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            segments.get(0, segment);
+            assertThat(segment).containsExactly(0f, 0f, 0f, 0f, 0f, -5f);
+        }
+    }
+
+    @Test
+    public void test_undo_after_a_skipped_loop_only_sees_the_segments_drawn() throws Exception {
+        try (SegmentStore segments = new SegmentStore(1024)) {
+            Program program = new Program(new HeadlessTurtle(segments));
+            program.setSkippingPeriods(true);
+
+            program.interpret("fd 5 repeat 1000 [fd 10 rt 90] undo 3");
+
+            // the skipped periods drew nothing to undo: the first line and a side of the square are left.
+            assertThat(segments.size()).isEqualTo(1 + 4 - 3);
+        }
+    }
+
+    @Test
+    public void test_loop_reading_its_counter_is_not_skipped() throws Exception {
+        program.setSkippingPeriods(true);
+
+        program.interpret("for [i 1 100 1] [fd :i rt 90]");
+
+        verify(turtleControl, Mockito.times(100)).turnRight(90f);
+    }
+
+    @Test
+    public void test_tell_hands_commands_to_the_told_turtles() throws Exception {
+        TurtleActionCallbacks first = Mockito.mock(TurtleActionCallbacks.class);
+        TurtleActionCallbacks second = Mockito.mock(TurtleActionCallbacks.class);
+        program.setTurtleProvider(id -> id == 1 ? first : second);
+
+        program.interpret("tell [1 2] fd 10 rt 90 pu\ntell 0 fd 5");
+
+        // each turtle gets the commands in order, on its own.
+        InOrder firstInOrder = Mockito.inOrder(first);
+        firstInOrder.verify(first).forward(10f);
+        firstInOrder.verify(first).turnRight(90f);
+        InOrder secondInOrder = Mockito.inOrder(second);
+        secondInOrder.verify(second).forward(10f);
+        secondInOrder.verify(second).turnRight(90f);
+        verify(first).penUp();
+        verify(second).penUp();
+        verify(turtleControl).forward(5f);
+        verify(turtleControl, Mockito.never()).penUp();
+    }
+
+    @Test
+    public void test_ask_only_lasts_for_its_block() throws Exception {
+        TurtleActionCallbacks first = Mockito.mock(TurtleActionCallbacks.class);
+        program.setTurtleProvider(id -> first);
+
+        program.interpret("ask 1 [fd 1] fd 2");
+        program.interpret("tell 1");
+        program.interpret("fd 3");
+
+        verify(first).forward(1f);
+        verify(turtleControl).forward(2f);
+        verify(first).forward(3f);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_no_other_turtle_without_provider() throws Exception {
+        program.interpret("tell 1");
+    }
+
+    @Test
+    public void test_swarm_of_headless_turtles_is_merged() throws Exception {
+        List<SegmentStore> stores = new ArrayList<>();
+        try (SegmentStore merged = new SegmentStore(7)) {
+            stores.add(new SegmentStore(16));
+            Program swarm = new Program(new HeadlessTurtle(stores.get(0)));
+            swarm.setTurtleProvider(id -> {
+                SegmentStore store = new SegmentStore(16);
+                stores.add(store);
+                return new HeadlessTurtle(store);
+            });
+            StringBuilder source = new StringBuilder();
+            StringBuilder turtles = new StringBuilder("tell [");
+            for (int i = 0; i < 64; i++) {
+                // turtle i starts at x = i, Logo y = 1.
+                source.append("ask ").append(i).append(" [pu setxy ").append(i).append(" 1 pd]\n");
+                turtles.append(i).append(' ');
+            }
+            source.append(turtles).append("]\nrepeat 4 [fd 10 rt 90] pu fd 1 pd fd 2");
+
+            swarm.interpret(source.toString());
+            for (SegmentStore store : stores) {
+                merged.append(store);
+            }
+
+            assertThat(stores).hasSize(64);
+            assertThat(merged.size()).isEqualTo(64 * 5);
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            for (int i = 0; i < 64; i++) {
+                merged.get(i * 5, segment);
+                assertThat(segment).containsExactly(i, 0f, -1f, i, 0f, -11f);
+                // back at start after the square, then 1 up and 2 drawn.
+                merged.get(i * 5 + 4, segment);
+                assertThat(segment[3]).isEqualTo(i, offset(1e-3f));
+                assertThat(segment[5]).isEqualTo(-4f, offset(1e-3f));
+            }
+        } finally {
+            stores.forEach(SegmentStore::close);
+        }
+    }
+
+    @Test(expected = ExecutionLimitException.class)
+    public void test_swarm_throws_what_a_turtle_threw() throws Exception {
+        try (SegmentStore limited = new SegmentStore(16); SegmentStore other = new SegmentStore(16)) {
+            program.setTurtleProvider(id -> id == 1 ? new HeadlessTurtle(limited, 3) : new HeadlessTurtle(other));
+
+            program.interpret("tell [1 2] repeat 4 [fd 10 rt 90]");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package logo3d.language;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Mockito.verify;
+
+public class ScriptLoaderTest {
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    TurtleActionCallbacks turtleControl;
+
+    @Test
+    public void test_load_runs_every_line() throws Exception {
+        // large enough to be interpreted in several batches.
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            script.append("fd 1 rt 90\n");
+        }
+        // a single line, many commands.
+        script.append("repeat 100 [fd 1]\n");
+        File file = write(script.toString());
+
+        List<ScriptLoader.Progress> reports = new ArrayList<>();
+        ScriptLoader.Progress progress = new ScriptLoader(new Program(turtleControl)).load(file.toPath(), reports::add);
+
+        verify(turtleControl, Mockito.times(5100)).forward(anyFloat());
+        verify(turtleControl, Mockito.times(5000)).turnRight(anyFloat());
+        assertThat(progress.isDone()).isTrue();
+        assertThat(progress.isCancelled()).isFalse();
+        assertThat(progress.getCommandsProcessed()).isEqualTo(5000 * 2 + 1 + 100);
+        assertThat(progress.getBytesProcessed()).isEqualTo(file.length());
+        assertThat(reports).isNotEmpty();
+    }
+
+    @Test
+    public void test_load_last_line_without_eol() throws Exception {
+        File file = write("fd 1\nfd 2");
+
+        new ScriptLoader(new Program(turtleControl)).load(file.toPath(), progress -> {
+        });
+
+        verify(turtleControl).forward(1f);
+        verify(turtleControl).forward(2f);
+    }
+
+    @Test
+    public void test_cancel_stops_the_load() throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            script.append("fd 1\n");
+        }
+        File file = write(script.toString());
+
+        ScriptLoader loader = new ScriptLoader(new Program(turtleControl));
+        // cancel from within the first batch.
+        Mockito.doAnswer(invocation -> {
+            loader.cancel();
+            return null;
+        }).when(turtleControl).forward(anyFloat());
+
+        ScriptLoader.Progress progress = loader.load(file.toPath(), p -> {
+        });
+
+        assertThat(progress.isCancelled()).isTrue();
+        assertThat(progress.getBytesProcessed()).isLessThan(file.length());
+    }
+
+    @Test
+    public void test_cancel_before_a_prepared_load_starts() throws Exception {
+        File file = write("fd 1\nfd 2");
+        ScriptLoader loader = new ScriptLoader(new Program(turtleControl));
+
+        // queued on the interpreter, then cancelled before it runs.
+        ScriptLoader.Ticket ticket = loader.prepare();
+        loader.cancel();
+        ScriptLoader.Progress progress = loader.load(ticket, file.toPath(), p -> {
+        });
+
+        assertThat(progress.isCancelled()).isTrue();
+        verify(turtleControl, Mockito.never()).forward(anyFloat());
+
+        // a later load is not cancelled.
+        assertThat(loader.load(file.toPath(), p -> {
+        }).isCancelled()).isFalse();
+        verify(turtleControl).forward(2f);
+    }
+
+    private File write(String script) throws Exception {
+        File file = folder.newFile("script.logo");
+        Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+package logo3d.language;
+
+import logo3d.language.drawing.HeadlessTurtle;
+import logo3d.language.drawing.SegmentStore;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class ShapeTest {
+
+    @Test
+    public void test_shape_matches_replayed_commands() throws Exception {
+        Shape.Recorder recorder = new Shape.Recorder();
+        recorder.forward(10);
+        recorder.turnRight(90);
+        recorder.backward(5);
+        recorder.turnLeft(45);
+        recorder.forward(2);
+        Shape shape = recorder.toShape("test", 5);
+
+        try (SegmentStore segments = new SegmentStore(16)) {
+            HeadlessTurtle turtle = new HeadlessTurtle(segments);
+            shape.replay(turtle);
+
+            assertThat(shape.getSegmentCount()).isEqualTo((int) segments.size());
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            for (int i = 0; i < shape.getSegmentCount(); i++) {
+                segments.get(i, segment);
+                for (int j = 0; j < Shape.FLOATS_PER_SEGMENT; j++) {
+                    assertThat(shape.getSegments()[i * Shape.FLOATS_PER_SEGMENT + j]).isEqualTo(segment[j], offset(1e-4f));
+                }
+            }
+            assertThat(shape.getEndX()).isEqualTo(turtle.getX(), offset(1e-4f));
+            assertThat(shape.getEndZ()).isEqualTo(turtle.getZ(), offset(1e-4f));
+            assertThat(shape.getEndHeading()).isEqualTo(turtle.getHeading(), offset(1e-4f));
+        }
+    }
+
+    @Test
+    public void test_instanced_procedures_draw_like_plain_ones() throws Exception {
+        try (SegmentStore segments = new SegmentStore(16)) {
+            HeadlessTurtle turtle = new HeadlessTurtle(segments);
+            Program program = new Program(turtle);
+
+            // the second square is drawn from the recorded shape.
+            program.interpret("to square :size\n repeat 4 [fd :size rt 90]\n end\n square 10 rt 45 fd 3 square 10");
+
+            assertThat(segments.size()).isEqualTo(9);
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            segments.get(5, segment);
+            // first side of the second square, heading 45 degrees right from (3 sin 45, -3 cos 45).
+            float start = 3 * (float) Math.sqrt(0.5);
+            assertThat(segment[0]).isEqualTo(start, offset(1e-4f));
+            assertThat(segment[2]).isEqualTo(-start, offset(1e-4f));
+            assertThat(segment[3]).isEqualTo(start + 10 * (float) Math.sqrt(0.5), offset(1e-4f));
+            assertThat(segment[5]).isEqualTo(-start - 10 * (float) Math.sqrt(0.5), offset(1e-4f));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package logo3d.language.drawing;
+
+import logo3d.language.ExecutionLimitException;
+import logo3d.language.Program;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class HeadlessTurtleTest {
+
+    private final SegmentStore segments = new SegmentStore(16);
+    private final HeadlessTurtle turtle = new HeadlessTurtle(segments, 10);
+    private final Program program = new Program(turtle);
+
+    @Test
+    public void test_square_comes_back_home() throws Exception {
+        program.interpret("fd 10 rt 90 fd 10 rt 90 fd 10 rt 90 fd 10 rt 90");
+
+        assertThat(segments.size()).isEqualTo(4);
+        assertThat(turtle.getX()).isEqualTo(0f, offset(1e-4f));
+        assertThat(turtle.getZ()).isEqualTo(0f, offset(1e-4f));
+        assertThat(turtle.getHeading()).isEqualTo(0f, offset(1e-4f));
+    }
+
+    @Test
+    public void test_pen_up_does_not_draw() throws Exception {
+        program.interpret("pu fd 10 pd setxy 5 5 home");
+
+        assertThat(segments.size()).isEqualTo(2);
+        float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+        segments.get(0, segment);
+        // Logo Y is -Z.
+        assertThat(segment).containsExactly(0f, 0f, -10f, 5f, 0f, -5f);
+    }
+
+    @Test
+    public void test_clear_and_undo() throws Exception {
+        program.interpret("fd 1 fd 1 fd 1 undo 2");
+        assertThat(segments.size()).isEqualTo(1);
+
+        program.interpret("cs");
+        assertThat(segments.size()).isEqualTo(0);
+    }
+
+    @Test(expected = ExecutionLimitException.class)
+    public void test_segment_limit() throws Exception {
+        program.interpret("for [i 1 20 1] [fd 1]");
+    }
+
+    @Test
+    public void test_retraced_segments_are_dropped() throws Exception {
+        HeadlessTurtle deduplicating = new HeadlessTurtle(segments);
+        deduplicating.setDeduplicator(new SegmentDeduplicator());
+        Program program = new Program(deduplicating);
+
+        // a square drawn 3 times, and its first side once more.
+        program.interpret("repeat 3 [fd 10 rt 90 fd 10 rt 90 fd 10 rt 90 fd 10 rt 90]\n fd 10");
+        assertThat(segments.size()).isEqualTo(4);
+
+        // undo counts the sides as written: first the retraced ones, not stored.
+        program.interpret("undo 9");
+        assertThat(segments.size()).isEqualTo(4);
+        program.interpret("undo");
+        assertThat(segments.size()).isEqualTo(3);
+
+        // the undone last side can be drawn again, the other way round.
+        program.interpret("pu setxy 10 0 pd home");
+        assertThat(segments.size()).isEqualTo(4);
+
+        program.interpret("cs\n fd 10");
+        assertThat(segments.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,127 @@
+package logo3d.language.drawing;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentDeduplicatorTest {
+
+    private final SegmentDeduplicator deduplicator = new SegmentDeduplicator();
+
+    @Test
+    public void test_same_segment_either_way() throws Exception {
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 2, 0)).isTrue();
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 2, 0)).isFalse();
+        // drawn backward.
+        assertThat(deduplicator.add(1, 0, 2, 0, 0, 0, 0)).isFalse();
+        // within the quantum.
+        assertThat(deduplicator.add(0.0001f, 0, 0, 1, 0, 1.9999f, 0)).isFalse();
+
+        assertThat(deduplicator.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_other_segments_are_kept() throws Exception {
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 0)).isTrue();
+        // another pen.
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 1)).isTrue();
+        // overlapping, but not the same.
+        assertThat(deduplicator.add(0, 0, 0, 2, 0, 0, 0)).isTrue();
+
+        assertThat(deduplicator.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_table_grows() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            assertThat(deduplicator.add(i, 0, 0, i + 1, 0, 0, 0)).isTrue();
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(deduplicator.add(i + 1, 0, 0, i, 0, 0, 0)).isFalse();
+        }
+        assertThat(deduplicator.size()).isEqualTo(10000);
+    }
+
+    @Test
+    public void test_far_away_segments_are_kept() throws Exception {
+        // beyond the range of an int once quantized.
+        assertThat(deduplicator.add(3e6f, 0, 0, 3e6f, 0, 1, 0)).isTrue();
+        assertThat(deduplicator.add(4e6f, 0, 0, 4e6f, 0, 1, 0)).isTrue();
+        assertThat(deduplicator.add(-3e6f, 0, 0, -3e6f, 0, 1, 0)).isTrue();
+        assertThat(deduplicator.add(4e6f, 0, 1, 4e6f, 0, 0, 0)).isFalse();
+
+        assertThat(deduplicator.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_truncate_forgets_the_last_segments() throws Exception {
+        // enough to grow the table in between.
+        for (int i = 0; i < 5000; i++) {
+            assertThat(deduplicator.add(i, 0, 0, i + 1, 0, 0, 0)).isTrue();
+        }
+
+        deduplicator.truncate(3000);
+
+        assertThat(deduplicator.size()).isEqualTo(3000);
+        for (int i = 0; i < 3000; i++) {
+            assertThat(deduplicator.add(i, 0, 0, i + 1, 0, 0, 0)).isFalse();
+        }
+        for (int i = 3000; i < 5000; i++) {
+            assertThat(deduplicator.add(i, 0, 0, i + 1, 0, 0, 0)).isTrue();
+        }
+        assertThat(deduplicator.size()).isEqualTo(5000);
+    }
+
+    @Test
+    public void test_truncate_after_reset_counts_the_duplicates_of_the_store() throws Exception {
+        try (SegmentStore store = new SegmentStore(4)) {
+            // drawn twice before deduplicating.
+            store.add(0, 0, 0, 1, 0, 0);
+            store.add(0, 0, 0, 1, 0, 0);
+            store.add(1, 0, 0, 2, 0, 0);
+            deduplicator.reset(store, 0);
+
+            deduplicator.truncate(2);
+
+            assertThat(deduplicator.size()).isEqualTo(1);
+            assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 0)).isFalse();
+            assertThat(deduplicator.add(1, 0, 0, 2, 0, 0, 0)).isTrue();
+        }
+    }
+
+    @Test
+    public void test_undo_counts_the_duplicates_dropped() throws Exception {
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 0)).isTrue();
+        assertThat(deduplicator.add(1, 0, 0, 2, 0, 0, 0)).isTrue();
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 0)).isFalse();
+        assertThat(deduplicator.add(2, 0, 0, 3, 0, 0, 0)).isTrue();
+        assertThat(deduplicator.add(1, 0, 0, 0, 0, 0, 0)).isFalse();
+        assertThat(deduplicator.add(2, 0, 0, 1, 0, 0, 0)).isFalse();
+        assertThat(deduplicator.getDropped()).isEqualTo(3);
+
+        // the two duplicates written last, then the third segment.
+        assertThat(deduplicator.undo(3)).isEqualTo(2);
+        assertThat(deduplicator.getDropped()).isEqualTo(1);
+        assertThat(deduplicator.size()).isEqualTo(2);
+
+        // the duplicate between the second and third segments, then the second one.
+        assertThat(deduplicator.undo(2)).isEqualTo(1);
+        assertThat(deduplicator.getDropped()).isEqualTo(0);
+        assertThat(deduplicator.undo(10)).isEqualTo(0);
+        assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 0)).isTrue();
+    }
+
+    @Test
+    public void test_reset_from_store() throws Exception {
+        try (SegmentStore store = new SegmentStore(4)) {
+            store.add(0, 0, 0, 1, 0, 0);
+            deduplicator.add(5, 0, 0, 6, 0, 0, 0);
+
+            deduplicator.reset(store, 0);
+
+            assertThat(deduplicator.size()).isEqualTo(1);
+            assertThat(deduplicator.add(0, 0, 0, 1, 0, 0, 0)).isFalse();
+            assertThat(deduplicator.add(5, 0, 0, 6, 0, 0, 0)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package logo3d.language.drawing;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentStoreTest {
+
+    @Test
+    public void test_segments_are_paged() throws Exception {
+        try (SegmentStore store = new SegmentStore(4)) {
+            for (int i = 0; i < 10; i++) {
+                store.add(i, 0, 0, i + 1, 0, 0);
+            }
+
+            assertThat(store.size()).isEqualTo(10);
+            assertThat(store.getPageCount()).isEqualTo(3);
+            assertThat(store.getPageSize(0)).isEqualTo(4);
+            assertThat(store.getPageSize(2)).isEqualTo(2);
+
+            ByteBuffer lastPage = store.getPage(2);
+            assertThat(lastPage.isDirect()).isTrue();
+            assertThat(lastPage.remaining()).isEqualTo(2 * SegmentStore.SEGMENT_BYTES);
+            // first float of the 9th segment
+            assertThat(lastPage.asFloatBuffer().get(0)).isEqualTo(8f);
+
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            store.get(5, segment);
+            assertThat(segment).containsExactly(5f, 0f, 0f, 6f, 0f, 0f);
+        }
+    }
+
+    @Test
+    public void test_append_copies_across_page_boundaries() throws Exception {
+        try (SegmentStore store = new SegmentStore(4); SegmentStore other = new SegmentStore(3)) {
+            for (int i = 0; i < 3; i++) {
+                store.add(i, 0, 0, i + 1, 0, 0);
+            }
+            for (int i = 3; i < 10; i++) {
+                other.add(i, 0, 0, i + 1, 0, 0);
+            }
+
+            store.append(other);
+
+            assertThat(store.size()).isEqualTo(10);
+            assertThat(store.getPageCount()).isEqualTo(3);
+            assertThat(other.size()).isEqualTo(7);
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            for (int i = 0; i < 10; i++) {
+                store.get(i, segment);
+                assertThat(segment).containsExactly(i, 0f, 0f, i + 1, 0f, 0f);
+            }
+        }
+    }
+
+    @Test
+    public void test_truncate_releases_pages() throws Exception {
+        try (SegmentStore store = new SegmentStore(4)) {
+            for (int i = 0; i < 10; i++) {
+                store.add(i, 0, 0, i + 1, 0, 0);
+            }
+
+            store.truncate(5);
+            assertThat(store.size()).isEqualTo(5);
+            assertThat(store.getPageCount()).isEqualTo(2);
+            assertThat(store.getPageSize(1)).isEqualTo(1);
+
+            // appending again overwrites the truncated segments.
+            store.add(42, 0, 0, 43, 0, 0);
+            float[] segment = new float[SegmentStore.FLOATS_PER_SEGMENT];
+            store.get(5, segment);
+            assertThat(segment[0]).isEqualTo(42f);
+
+            store.clear();
+            assertThat(store.size()).isEqualTo(0);
+            assertThat(store.getPageCount()).isEqualTo(0);
+
+            store.add(1, 2, 3, 4, 5, 6);
+            assertThat(store.getPageCount()).isEqualTo(1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_cannot_truncate_beyond_size() throws Exception {
+        try (SegmentStore store = new SegmentStore()) {
+            store.truncate(1);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package logo3d.language.drawing;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class StrokeMeshBuilderTest {
+
+    @Test
+    public void test_tube_surrounds_the_segment() throws Exception {
+        StrokeMeshBuilder builder = new StrokeMeshBuilder(StrokeMeshBuilder.Profile.TUBE, 0.5f, 6);
+
+        // along -Z, then vertical.
+        StrokeMeshBuilder.StrokeMesh mesh = builder.build(FloatBuffer.wrap(new float[]{
+                0, 0, 0, 0, 0, -10,
+                1, 0, 0, 1, 5, 0}));
+
+        assertThat(mesh.getSegmentCount()).isEqualTo(2);
+        assertThat(mesh.getPositions().limit()).isEqualTo(2 * 12 * 3);
+        assertThat(mesh.getIndices().limit()).isEqualTo(2 * 36);
+        for (int vertex = 0; vertex < 12; vertex++) {
+            float x = mesh.getPositions().get(vertex * 3);
+            float y = mesh.getPositions().get(vertex * 3 + 1);
+            // at radius from the Z axis, with an outward unit normal.
+            assertThat(x * x + y * y).isEqualTo(0.25f, offset(1e-5f));
+            assertThat(mesh.getNormals().get(vertex * 3) * 0.5f).isEqualTo(x, offset(1e-5f));
+            assertThat(mesh.getNormals().get(vertex * 3 + 2)).isEqualTo(0f, offset(1e-5f));
+        }
+        for (int vertex = 12; vertex < 24; vertex++) {
+            float x = mesh.getPositions().get(vertex * 3) - 1;
+            float z = mesh.getPositions().get(vertex * 3 + 2);
+            assertThat(x * x + z * z).isEqualTo(0.25f, offset(1e-5f));
+        }
+        for (int i = 0; i < mesh.getIndices().limit(); i++) {
+            int vertex = mesh.getIndices().get(i);
+            // triangles only join the two ends of their own segment.
+            assertThat(vertex).isBetween(i < 36 ? 0 : 12, i < 36 ? 11 : 23);
+        }
+    }
+
+    @Test
+    public void test_ribbon_faces_up() throws Exception {
+        StrokeMeshBuilder builder = new StrokeMeshBuilder(StrokeMeshBuilder.Profile.RIBBON, 0.5f, 0);
+
+        StrokeMeshBuilder.StrokeMesh mesh = builder.build(FloatBuffer.wrap(new float[]{0, 0, 0, 0, 0, -10}));
+
+        assertThat(mesh.getPositions().limit()).isEqualTo(4 * 3);
+        assertThat(mesh.getIndices().limit()).isEqualTo(6);
+        for (int vertex = 0; vertex < 4; vertex++) {
+            assertThat(Math.abs(mesh.getPositions().get(vertex * 3))).isEqualTo(0.5f, offset(1e-5f));
+            assertThat(mesh.getPositions().get(vertex * 3 + 1)).isEqualTo(0f, offset(1e-5f));
+            assertThat(mesh.getNormals().get(vertex * 3 + 1)).isEqualTo(1f, offset(1e-5f));
+        }
+    }
+
+    @Test
+    public void test_parallel_chunks_build_the_same_mesh() throws Exception {
+        float[] segments = new float[1000 * SegmentStore.FLOATS_PER_SEGMENT];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = (i * 7919) % 101 - 50;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            StrokeMeshBuilder.StrokeMesh sequential = new StrokeMeshBuilder(StrokeMeshBuilder.Profile.TUBE, 0.1f, 5,
+                    pool, Integer.MAX_VALUE).build(FloatBuffer.wrap(segments));
+            StrokeMeshBuilder.StrokeMesh parallel = new StrokeMeshBuilder(StrokeMeshBuilder.Profile.TUBE, 0.1f, 5,
+                    pool, 7).build(FloatBuffer.wrap(segments));
+
+            assertThat(parallel.getPositions()).isEqualTo(sequential.getPositions());
+            assertThat(parallel.getNormals()).isEqualTo(sequential.getNormals());
+            assertThat(parallel.getIndices()).isEqualTo(sequential.getIndices());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package logo3d.language.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import logo3d.language.Program;
+import logo3d.language.drawing.HeadlessTurtle;
+import logo3d.language.drawing.SegmentStore;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogoEventsTest {
+
+    @Test
+    public void test_events_are_recorded_once_enabled() throws Exception {
+        Path file = Files.createTempFile("logo3d", ".jfr");
+        try (SegmentStore segments = new SegmentStore(1024); Recording recording = new Recording()) {
+            recording.enable("logo3d.Parse");
+            recording.enable("logo3d.Execute");
+            recording.enable("logo3d.ProcedureCall");
+            recording.enable("logo3d.Loop");
+            recording.start();
+
+            new Program(new HeadlessTurtle(segments)).interpret("to square :size\n repeat 4 [fd :size rt 90]\n end\n"
+                    + "square 10\nsquare 10", 3);
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            RecordedEvent parse = single(events, "logo3d.Parse");
+            assertThat(parse.getInt("characters")).isGreaterThan(0);
+            assertThat(parse.getInt("firstLine")).isEqualTo(3);
+            assertThat(parse.getInt("syntaxErrors")).isEqualTo(0);
+
+            RecordedEvent execute = single(events, "logo3d.Execute");
+            assertThat(execute.getInt("firstLine")).isEqualTo(3);
+            assertThat(execute.getLong("commands")).isEqualTo(2 * (1 + 1 + 4 * 2));
+            assertThat(execute.getBoolean("failed")).isFalse();
+
+            List<RecordedEvent> calls = named(events, "logo3d.ProcedureCall");
+            assertThat(calls).hasSize(2);
+            for (RecordedEvent call : calls) {
+                assertThat(call.getString("procedure")).isEqualTo("square");
+                assertThat(call.getLong("commands")).isEqualTo(1 + 4 * 2);
+                assertThat(call.getInt("segments")).isEqualTo(4);
+            }
+            assertThat(calls.stream().map(call -> call.getInt("line")).collect(Collectors.toList())).containsOnly(6, 7);
+            assertThat(calls.stream().map(call -> call.getBoolean("shapeReused")).collect(Collectors.toList()))
+                    .containsOnly(false, true);
+
+            // only run while recording the shape.
+            RecordedEvent loop = single(events, "logo3d.Loop");
+            assertThat(loop.getString("kind")).isEqualTo("repeat");
+            assertThat(loop.getInt("line")).isEqualTo(4);
+            assertThat(loop.getLong("iterations")).isEqualTo(4);
+            assertThat(loop.getLong("commands")).isEqualTo(4 * 2);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = named(events, name);
+        assertThat(named).hasSize(1);
+        return named.get(0);
+    }
+}
@@ -0,0 +1,310 @@
+package logo3d.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import logo3d.language.ExecutionLimitException;
+import logo3d.language.LogoParsers;
+import logo3d.language.drawing.SegmentStore;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs Logo scripts for many users at once, over a local HTTP endpoint.
+ *
+ * <ul>
+ * <li>POST /run: run the script in the request body in a fresh session, dropped afterwards,</li>
+ * <li>POST /sessions/{id}/run: run it in a session kept between runs (variables, turtle and drawing),</li>
+ * <li>DELETE /sessions/{id}: drop a session.</li>
+ * </ul>
+ *
+ * A successful run answers with the whole drawing of the session as a binary segment stream: the 4 ASCII bytes
+ * "L3DS", then little-endian an int32 version (1), an int64 segment count, and 6 float32 per segment
+ * (x0, y0, z0, x1, y1, z1). Syntax errors answer 400, and a run going beyond its {@link SessionLimits} 422.
+ * Sessions kept and fresh sessions of runs in progress count against the same limit: beyond it, requests answer 503.
+ *
+ * Each request is handled on its own virtual thread when running on Java 21 or later. Requests share a pool of
+ * parsers, one per core.
+ */
+public class LogoServer implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(LogoServer.class);
+
+    private static final byte[] MAGIC = "L3DS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private static final Pattern SESSION_PATH = Pattern.compile("/sessions/([A-Za-z0-9_-]{1,64})(/run)?");
+
+    private final SessionLimits limits;
+    private final HttpServer httpServer;
+    private final ExecutorService requestExecutor = newRequestExecutor();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // sessions kept and fresh sessions running, counted apart: the size of the map is not updated atomically with a
+    // new session.
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    // a virtual thread lives for a single request, a parser per thread would be a parser per request.
+    private final LogoParsers.Source parsers = LogoParsers.pool(Runtime.getRuntime().availableProcessors());
+
+    public LogoServer(int port, SessionLimits limits) throws IOException {
+        this.limits = limits;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/", this::handle);
+        httpServer.setExecutor(requestExecutor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        LogoServer server = new LogoServer(port, SessionLimits.DEFAULTS);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    public void start() {
+        // warm the shared parser cache before the first request.
+        requestExecutor.submit(LogoParsers::warmUp);
+        long sweepPeriod = Math.max(1, limits.idleTimeoutMillis / 4);
+        sweeper.scheduleAtFixedRate(this::dropIdleSessions, sweepPeriod, sweepPeriod, TimeUnit.MILLISECONDS);
+        httpServer.start();
+        LOG.info("Listening on {}", httpServer.getAddress());
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        sweeper.shutdownNow();
+        requestExecutor.shutdownNow();
+        for (String id : sessions.keySet()) {
+            drop(id);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Matcher sessionPath = SESSION_PATH.matcher(path);
+
+            if (path.equals("/run") && method.equals("POST")) {
+                runInFreshSession(exchange);
+            } else if (sessionPath.matches() && sessionPath.group(2) != null && method.equals("POST")) {
+                runInSession(exchange, sessionPath.group(1));
+            } else if (sessionPath.matches() && sessionPath.group(2) == null && method.equals("DELETE")) {
+                sendText(exchange, drop(sessionPath.group(1)) ? 204 : 404, "");
+            } else {
+                sendText(exchange, 404, "Unknown resource " + method + " " + path);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to handle {}", exchange.getRequestURI(), e);
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void runInFreshSession(HttpExchange exchange) throws IOException {
+        if (!reserveSession()) {
+            sendText(exchange, 503, "Too many sessions");
+            return;
+        }
+        try (Session session = new Session(limits, parsers)) {
+            session.lock.lock();
+            try {
+                run(exchange, session);
+            } finally {
+                session.lock.unlock();
+            }
+        } finally {
+            sessionCount.decrementAndGet();
+        }
+    }
+
+    private void runInSession(HttpExchange exchange, String id) throws IOException {
+        Session session = sessions.get(id);
+        if (session == null) {
+            session = sessions.computeIfAbsent(id, key -> reserveSession() ? new Session(limits, parsers) : null);
+            if (session == null) {
+                sendText(exchange, 503, "Too many sessions");
+                return;
+            }
+        }
+        session.lock.lock();
+        try {
+            if (session.isClosed()) {
+                sendText(exchange, 409, "Session " + id + " was dropped");
+                return;
+            }
+            run(exchange, session);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Count a new session, unless there are too many already.
+     *
+     * @return whether the session can be created.
+     */
+    private boolean reserveSession() {
+        if (sessionCount.incrementAndGet() > limits.maxSessions) {
+            sessionCount.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Must be called with the lock of the session held.
+     */
+    private void run(HttpExchange exchange, Session session) throws IOException {
+        String script = readScript(exchange.getRequestBody());
+        if (script == null) {
+            sendText(exchange, 413, "Scripts are limited to " + limits.maxScriptBytes + " bytes");
+            return;
+        }
+        try {
+            List<String> syntaxErrors = session.run(script);
+            if (!syntaxErrors.isEmpty()) {
+                sendText(exchange, 400, String.join("\n", syntaxErrors));
+                return;
+            }
+        } catch (ExecutionLimitException e) {
+            sendText(exchange, 422, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            sendText(exchange, 400, String.valueOf(e.getMessage()));
+            return;
+        }
+        sendSegments(exchange, session.getSegments());
+    }
+
+    /**
+     * @return the script, or null if it is larger than allowed.
+     */
+    private String readScript(InputStream body) throws IOException {
+        ByteArrayOutputStream script = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            script.write(buffer, 0, read);
+            if (script.size() > limits.maxScriptBytes) {
+                return null;
+            }
+        }
+        return new String(script.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendSegments(HttpExchange exchange, SegmentStore segments) throws IOException {
+        long length = HEADER_BYTES + segments.size() * SegmentStore.SEGMENT_BYTES;
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, length);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putLong(segments.size());
+        header.flip();
+
+        OutputStream out = exchange.getResponseBody();
+        WritableByteChannel channel = Channels.newChannel(out);
+        channel.write(header);
+        for (int i = 0; i < segments.getPageCount(); i++) {
+            ByteBuffer page = segments.getPage(i);
+            if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+                page = toLittleEndian(page);
+            }
+            while (page.hasRemaining()) {
+                channel.write(page);
+            }
+        }
+        out.flush();
+    }
+
+    private static ByteBuffer toLittleEndian(ByteBuffer page) {
+        ByteBuffer converted = ByteBuffer.allocate(page.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        while (page.hasRemaining()) {
+            converted.putFloat(page.getFloat());
+        }
+        converted.flip();
+        return converted;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private boolean drop(String id) {
+        Session session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        sessionCount.decrementAndGet();
+        session.lock.lock();
+        try {
+            session.close();
+        } finally {
+            session.lock.unlock();
+        }
+        return true;
+    }
+
+    private void dropIdleSessions() {
+        long idleSince = System.currentTimeMillis() - limits.idleTimeoutMillis;
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (entry.getValue().getLastAccess() < idleSince && !entry.getValue().lock.isLocked()) {
+                LOG.debug("Dropping idle session {}", entry.getKey());
+                drop(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * One virtual thread per request on Java 21 and later; the server still runs on older JVMs, with platform threads.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Virtual threads need Java 21 or later, requests are handled by a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package logo3d.server;
+
+import logo3d.language.LogoParsers;
+import logo3d.language.Program;
+import logo3d.language.drawing.HeadlessTurtle;
+import logo3d.language.drawing.SegmentStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An isolated program, with its own variables and its own headless turtle.
+ *
+ * Runs of a session are serialized by its lock; a ReentrantLock rather than synchronized, so a virtual thread
+ * waiting for it does not pin its carrier thread.
+ */
+class Session implements AutoCloseable {
+
+    // small pages: thousands of sessions each hold at least one.
+    private static final int PAGE_SEGMENTS = 1024;
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    private final SegmentStore segments = new SegmentStore(PAGE_SEGMENTS);
+    private final List<String> syntaxErrors = new ArrayList<>();
+    private final Program program;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+    private boolean closed;
+
+    Session(SessionLimits limits, LogoParsers.Source parsers) {
+        this.program = new Program(new HeadlessTurtle(segments, limits.maxSegments), syntaxErrors::add);
+        program.setParsers(parsers);
+        program.setCommandLimit(limits.maxCommands);
+        program.setTimeLimit(limits.timeLimitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Must be called with the lock held.
+     *
+     * @return the syntax errors, empty if the script ran.
+     */
+    List<String> run(String script) {
+        lastAccess = System.currentTimeMillis();
+        syntaxErrors.clear();
+        program.interpret(script);
+        return new ArrayList<>(syntaxErrors);
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    SegmentStore getSegments() {
+        return segments;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        segments.close();
+    }
+}
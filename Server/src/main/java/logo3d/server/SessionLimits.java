@@ -0,0 +1,32 @@
+package logo3d.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a single session, and the server as a whole, may use.
+ */
+public class SessionLimits {
+
+    public static final SessionLimits DEFAULTS = new SessionLimits(
+            1_000_000, 10_000_000, TimeUnit.SECONDS.toMillis(5), 1024 * 1024, 10_000, TimeUnit.MINUTES.toMillis(10));
+
+    // memory: 24 bytes of direct memory per segment.
+    final long maxSegments;
+    // cpu: commands executed and wall-clock time of a single run.
+    final long maxCommands;
+    final long timeLimitMillis;
+    final int maxScriptBytes;
+    // sessions kept between runs, and how long they are kept unused.
+    final int maxSessions;
+    final long idleTimeoutMillis;
+
+    public SessionLimits(long maxSegments, long maxCommands, long timeLimitMillis, int maxScriptBytes,
+                         int maxSessions, long idleTimeoutMillis) {
+        this.maxSegments = maxSegments;
+        this.maxCommands = maxCommands;
+        this.timeLimitMillis = timeLimitMillis;
+        this.maxScriptBytes = maxScriptBytes;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+}
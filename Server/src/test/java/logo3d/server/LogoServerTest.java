@@ -0,0 +1,180 @@
+package logo3d.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogoServerTest {
+
+    private LogoServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LogoServer(0, new SessionLimits(100, 10_000, TimeUnit.SECONDS.toMillis(5), 1024, 10,
+                TimeUnit.MINUTES.toMillis(1)));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void test_run_returns_the_segments() throws Exception {
+        Response response = post("/run", "fd 10 rt 90 fd 5");
+
+        assertThat(response.status).isEqualTo(200);
+        ByteBuffer stream = ByteBuffer.wrap(response.body).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        stream.get(magic);
+        assertThat(new String(magic, StandardCharsets.US_ASCII)).isEqualTo("L3DS");
+        assertThat(stream.getInt()).isEqualTo(1);
+        assertThat(stream.getLong()).isEqualTo(2);
+
+        // forward heads to -Z, then right turns to +X.
+        assertSegment(stream, 0, 0, 0, 0, 0, -10);
+        assertSegment(stream, 0, 0, -10, 5, 0, -10);
+        assertThat(stream.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void test_sessions_keep_their_state() throws Exception {
+        post("/sessions/alice/run", "make \"size 10");
+        post("/sessions/bob/run", "make \"size 20");
+
+        Response alice = post("/sessions/alice/run", "fd :size");
+        Response bob = post("/sessions/bob/run", "fd :size\nfd :size");
+
+        assertThat(segmentCount(alice)).isEqualTo(1);
+        assertThat(segmentCount(bob)).isEqualTo(2);
+
+        assertThat(delete("/sessions/alice")).isEqualTo(204);
+        assertThat(delete("/sessions/alice")).isEqualTo(404);
+    }
+
+    @Test
+    public void test_limits() throws Exception {
+        // more segments than allowed.
+        assertThat(post("/run", "for [i 1 1000 1] [fd 1 rt 90]").status).isEqualTo(422);
+        // more commands than allowed.
+        assertThat(post("/run", "pu for [i 1 100000 1] [fd 1]").status).isEqualTo(422);
+        // larger script than allowed.
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            script.append("fd 1\n");
+        }
+        assertThat(post("/run", script.toString()).status).isEqualTo(413);
+    }
+
+    @Test
+    public void test_session_limit_holds_under_concurrent_requests() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String path = "/sessions/s" + i + "/run";
+                statuses.add(clients.submit(() -> post(path, "fd 1").status));
+            }
+            int created = 0;
+            for (Future<Integer> status : statuses) {
+                if (status.get() == 200) {
+                    created++;
+                } else {
+                    assertThat(status.get()).isEqualTo(503);
+                }
+            }
+
+            assertThat(created).isEqualTo(10);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_fresh_sessions_count_against_the_session_limit() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertThat(post("/sessions/s" + i + "/run", "fd 1").status).isEqualTo(200);
+        }
+
+        assertThat(post("/run", "fd 1").status).isEqualTo(503);
+
+        assertThat(delete("/sessions/s0")).isEqualTo(204);
+        assertThat(post("/run", "fd 1").status).isEqualTo(200);
+        // released once the run is done.
+        assertThat(post("/sessions/s0/run", "fd 1").status).isEqualTo(200);
+    }
+
+    @Test
+    public void test_syntax_error() throws Exception {
+        Response response = post("/run", "fd [");
+
+        assertThat(response.status).isEqualTo(400);
+        assertThat(new String(response.body, StandardCharsets.UTF_8)).isNotEmpty();
+    }
+
+    private static void assertSegment(ByteBuffer stream, float... expected) {
+        for (float coordinate : expected) {
+            assertThat(stream.getFloat()).isEqualTo(coordinate, org.assertj.core.api.Assertions.offset(1e-4f));
+        }
+    }
+
+    private static long segmentCount(Response response) {
+        assertThat(response.status).isEqualTo(200);
+        return ByteBuffer.wrap(response.body).order(ByteOrder.LITTLE_ENDIAN).getLong(8);
+    }
+
+    private Response post(String path, String script) throws IOException {
+        HttpURLConnection connection = open(path);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(script.getBytes(StandardCharsets.UTF_8));
+        }
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+        try (InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while (in != null && (read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            response.body = body.toByteArray();
+        }
+        return response;
+    }
+
+    private int delete(String path) throws IOException {
+        HttpURLConnection connection = open(path);
+        connection.setRequestMethod("DELETE");
+        return connection.getResponseCode();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+    }
+
+    private static class Response {
+        int status;
+        byte[] body;
+    }
+}